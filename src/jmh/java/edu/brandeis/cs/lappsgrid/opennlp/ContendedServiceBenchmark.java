@@ -0,0 +1,14 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * <i>ContendedServiceBenchmark.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * The benchmarks of {@link ServiceBenchmark} with one thread per processor
+ * calling the same services, as concurrent requests do in the webapp. The
+ * threads share the annotator pools and the {@link Workers}.
+ */
+@Threads(Threads.MAX)
+public class ContendedServiceBenchmark extends ServiceBenchmark {
+}
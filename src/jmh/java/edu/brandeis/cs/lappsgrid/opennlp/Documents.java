@@ -0,0 +1,96 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.apache.commons.io.IOUtils;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Container;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <i>Documents.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * The services and the documents of the benchmarks, shared by all benchmark
+ * threads like the services of the webapp are shared by all requests.
+ * <p>
+ * The "short" document is one sentence, "medium" the warm-up corpus
+ * (warmup.txt) and "long" the corpus 30 times. The LIF input of every service
+ * is the output of the services before it, prepared once.
+ */
+@State(Scope.Benchmark)
+public class Documents {
+
+    @Param({"short", "medium", "long"})
+    public String size;
+
+    Splitter splitter;
+    Tokenizer tokenizer;
+    POSTagger tagger;
+    NamedEntityRecognizer recognizer;
+    Parser parser;
+    Pipeline pipeline;
+
+    String text;
+    String[] sentences;
+    String[] tokens;
+
+    String textLif;
+    String sentenceLif;
+    String tokenLif;
+    String posLif;
+
+    @Setup
+    public void setup() throws Exception {
+        // the benchmarks measure the work, not the caches
+        System.setProperty("cache.enabled", "false");
+        System.setProperty("Parser.memo-size", "0");
+
+        splitter = new Splitter();
+        tokenizer = new Tokenizer();
+        tagger = new POSTagger();
+        recognizer = new NamedEntityRecognizer();
+        parser = new Parser();
+        pipeline = new Pipeline();
+
+        text = text(size);
+        sentences = splitter.sentDetect(text);
+        tokens = tokenizer.tokenize(text);
+
+        Container container = new Container();
+        container.setLanguage("en");
+        container.setText(text);
+        textLif = new Data<>(Uri.LIF, container).asJson();
+        sentenceLif = splitter.execute(textLif);
+        tokenLif = tokenizer.execute(sentenceLif);
+        posLif = tagger.execute(tokenLif);
+    }
+
+    static String text(String size) throws IOException {
+        InputStream stream = Documents.class.getResourceAsStream(StartupListener.WARMUP_FILENAME);
+        String corpus;
+        try {
+            corpus = IOUtils.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+        switch (size) {
+            case "short":
+                return "Mike Smith is a good person and he is from Boston.";
+            case "medium":
+                return corpus;
+            case "long":
+                StringBuilder builder = new StringBuilder(corpus.length() * 30);
+                for (int i = 0; i < 30; i++) {
+                    builder.append(corpus).append("\n\n");
+                }
+                return builder.toString();
+            default:
+                throw new IllegalArgumentException("Unknown document size: " + size);
+        }
+    }
+}
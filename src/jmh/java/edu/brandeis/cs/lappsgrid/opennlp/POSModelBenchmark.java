@@ -0,0 +1,110 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.apache.commons.io.IOUtils;
+import org.lappsgrid.serialization.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <i>POSModelBenchmark.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Throughput of the maxent and the perceptron POS models on the MASC test
+ * document (jsons/MASC3-0202-1.json), tagged sentence by sentence. At the end
+ * of each trial the agreement of the model with the Penn tags of the Stanford
+ * tagger in the document is printed, as an estimate of its accuracy.
+ * <p>
+ * Run with "mvn -P jmh test-compile exec:exec -Djmh.args=POSModel".
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class POSModelBenchmark {
+
+    static final String CORPUS = "/jsons/MASC3-0202-1.json";
+
+    @Param({POSTagger.MAXENT, POSTagger.PERCEPTRON})
+    public String model;
+
+    POSTagger tagger;
+    List<String[]> sentences = new ArrayList<>();
+    List<String[]> goldTags = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty("cache.enabled", "false");
+        tagger = new POSTagger();
+
+        InputStream stream = POSModelBenchmark.class.getResourceAsStream(CORPUS);
+        Map document;
+        try {
+            document = Serializer.parse(IOUtils.toString(stream, "UTF-8"), Map.class);
+        } finally {
+            stream.close();
+        }
+        List<Map> steps = (List<Map>) document.get("steps");
+        List<Map> sentenceAnns = (List<Map>) steps.get(1).get("annotations");
+        List<Map> posAnns = (List<Map>) steps.get(2).get("annotations");
+        int next = 0;
+        for (Map sentence : sentenceAnns) {
+            long end = ((Number) sentence.get("end")).longValue();
+            List<String> words = new ArrayList<>();
+            List<String> tags = new ArrayList<>();
+            while (next < posAnns.size() && ((Number) posAnns.get(next).get("end")).longValue() <= end) {
+                Map features = (Map) posAnns.get(next++).get("features");
+                words.add((String) features.get("word"));
+                tags.add((String) features.get("pos"));
+            }
+            if (words.size() > 0) {
+                sentences.add(words.toArray(new String[words.size()]));
+                goldTags.add(tags.toArray(new String[tags.size()]));
+            }
+        }
+    }
+
+    @TearDown
+    public void accuracy() {
+        int tokens = 0;
+        int agreed = 0;
+        for (int i = 0; i < sentences.size(); i++) {
+            String[] tags = tagger.tag(sentences.get(i), model);
+            String[] gold = goldTags.get(i);
+            for (int j = 0; j < tags.length; j++) {
+                if (tags[j].equals(gold[j])) {
+                    agreed++;
+                }
+            }
+            tokens += tags.length;
+        }
+        System.out.println(String.format("%n%s agreement with %s: %d/%d tokens (%.2f%%)",
+                model, CORPUS, agreed, tokens, 100.0 * agreed / tokens));
+    }
+
+    @Benchmark
+    public void tag(Blackhole blackhole) {
+        for (String[] sentence : sentences) {
+            blackhole.consume(tagger.tag(sentence, model));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <i>ProducerBenchmark.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Cost of the provenance string every execute() writes in the "contains"
+ * metadata: reading version.properties per call, as the services did before,
+ * against the producer string they cache.
+ * <p>
+ * Run with "mvn -P jmh test-compile exec:exec -Djmh.args=Producer".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class ProducerBenchmark {
+
+    Tokenizer service;
+
+    @Setup
+    public void setup() throws OpenNLPWebServiceException {
+        service = new Tokenizer();
+    }
+
+    @Benchmark
+    public String producerUncached() {
+        return String.format("%s:%s", service.getClass().getName(), OpenNLPAbstractWebService.readVersion());
+    }
+
+    @Benchmark
+    public String producerCached() {
+        return service.getProducer();
+    }
+}
@@ -0,0 +1,153 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <i>ServiceBenchmark.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Single threaded benchmarks of every service: execute(String) on the LIF
+ * input of the service, execute(Container) on an already parsed input, and
+ * the annotator call under it. {@link ContendedServiceBenchmark} runs the same
+ * benchmarks from as many threads as processors.
+ * <p>
+ * Run with "mvn -P jmh test-compile exec:exec", JMH options go in
+ * -Djmh.args, e.g. -Djmh.args="Tokenizer -p size=long".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class ServiceBenchmark {
+
+    /**
+     * Containers parsed again before every call, execute(Container) adds its
+     * view to the container it gets.
+     */
+    @State(Scope.Thread)
+    public static class Containers {
+        Container text;
+        Container sentences;
+        Container tokens;
+
+        @Setup(Level.Invocation)
+        public void setup(Documents documents) {
+            text = container(documents.textLif);
+            sentences = container(documents.sentenceLif);
+            tokens = container(documents.tokenLif);
+        }
+
+        private static Container container(String lif) {
+            return new Container((Map) Serializer.parse(lif, Data.class).getPayload());
+        }
+    }
+
+    @Benchmark
+    public String splitterExecute(Documents documents) {
+        return documents.splitter.execute(documents.textLif);
+    }
+
+    @Benchmark
+    public String splitterExecuteContainer(Documents documents, Containers containers)
+            throws OpenNLPWebServiceException {
+        return documents.splitter.execute(containers.text);
+    }
+
+    @Benchmark
+    public Span[] splitterSentPosDetect(Documents documents) {
+        return documents.splitter.sentPosDetect(documents.text);
+    }
+
+    @Benchmark
+    public String tokenizerExecute(Documents documents) {
+        return documents.tokenizer.execute(documents.sentenceLif);
+    }
+
+    @Benchmark
+    public String tokenizerExecuteContainer(Documents documents, Containers containers)
+            throws OpenNLPWebServiceException {
+        return documents.tokenizer.execute(containers.sentences);
+    }
+
+    @Benchmark
+    public Span[] tokenizerTokenizePos(Documents documents) {
+        return documents.tokenizer.tokenizePos(documents.text);
+    }
+
+    @Benchmark
+    public String taggerExecute(Documents documents) {
+        return documents.tagger.execute(documents.tokenLif);
+    }
+
+    @Benchmark
+    public String taggerExecuteContainer(Documents documents, Containers containers)
+            throws OpenNLPWebServiceException {
+        return documents.tagger.execute(containers.tokens);
+    }
+
+    @Benchmark
+    public String[] taggerTag(Documents documents) {
+        return documents.tagger.tag(documents.tokens);
+    }
+
+    @Benchmark
+    public String recognizerExecute(Documents documents) {
+        return documents.recognizer.execute(documents.tokenLif);
+    }
+
+    @Benchmark
+    public String recognizerExecuteContainer(Documents documents, Containers containers)
+            throws OpenNLPWebServiceException {
+        return documents.recognizer.execute(containers.tokens);
+    }
+
+    @Benchmark
+    public Span[] recognizerFind(Documents documents) {
+        return documents.recognizer.find(documents.tokens);
+    }
+
+    @Benchmark
+    public String parserExecute(Documents documents) {
+        return documents.parser.execute(documents.sentenceLif);
+    }
+
+    @Benchmark
+    public String parserExecuteContainer(Documents documents, Containers containers)
+            throws OpenNLPWebServiceException {
+        return documents.parser.execute(containers.sentences);
+    }
+
+    @Benchmark
+    public void parserParse(Documents documents, Blackhole blackhole) {
+        for (String sentence : documents.sentences) {
+            Parse[] parses = documents.parser.parseLine(sentence);
+            blackhole.consume(parses);
+        }
+    }
+
+    @Benchmark
+    public String pipelineExecute(Documents documents) {
+        return documents.pipeline.execute(documents.textLif);
+    }
+}
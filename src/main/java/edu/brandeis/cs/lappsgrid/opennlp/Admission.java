@@ -0,0 +1,83 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <i>Admission.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Admission control of a service: at most "maxConcurrent" requests run at the
+ * same time, at most "maxQueued" more wait for their turn, up to "timeout"
+ * milliseconds. Any other request is turned away at once, so a burst of
+ * requests does not slow down the ones already running, nor fill the heap
+ * with documents nobody works on.
+ * <p>
+ * A limit of 0 or less admits every request.
+ */
+public class Admission {
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long timeout;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public Admission(int maxConcurrent, int maxQueued, long timeout) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(maxQueued, 0);
+        this.timeout = Math.max(timeout, 0);
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent, true) : null;
+    }
+
+    /**
+     * Admits a request, which must then call {@link #release()} when done.
+     *
+     * @return false when the service is full and the request is rejected
+     */
+    public boolean acquire() {
+        if (permits == null) {
+            return true;
+        }
+        try {
+            // the timed form honors the fairness, a request does not pass the queued ones
+            if (permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                return false;
+            }
+            try {
+                return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getRunning() {
+        return permits == null ? 0 : maxConcurrent - permits.availablePermits();
+    }
+}
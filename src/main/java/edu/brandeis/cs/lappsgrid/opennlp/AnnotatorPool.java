@@ -0,0 +1,96 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.util.model.BaseModel;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <i>AnnotatorPool.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * A bounded pool of OpenNLP annotators (TokenizerME, POSTaggerME, ...).
+ * The annotators are NOT thread safe, while the models they are built on are,
+ * so each request borrows an annotator for its own exclusive use and releases
+ * it afterwards. Annotators are created lazily, up to the capacity of the pool,
+ * and further requests wait until one is released.
+ * <p>
+ * When the pool knows the model of its annotators, every borrow marks the
+ * model as used in the {@link ModelRegistry}, so it is not unloaded as idle.
+ */
+public class AnnotatorPool<T> {
+
+    public interface Factory<T> {
+        T create();
+    }
+
+    private final Factory<T> factory;
+    private final int capacity;
+    private final AtomicInteger created = new AtomicInteger();
+    private final BlockingQueue<T> idle;
+    private final BaseModel model;
+
+    public AnnotatorPool(int capacity, Factory<T> factory) {
+        this(capacity, null, factory);
+    }
+
+    public AnnotatorPool(int capacity, BaseModel model, Factory<T> factory) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Pool capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.factory = factory;
+        this.model = model;
+        this.idle = new LinkedBlockingQueue<>(capacity);
+    }
+
+    public T borrow() {
+        if (model != null) {
+            ModelRegistry.getInstance().touch(model);
+        }
+        T annotator = idle.poll();
+        if (annotator != null) {
+            return annotator;
+        }
+        int count;
+        while ((count = created.get()) < capacity) {
+            if (created.compareAndSet(count, count + 1)) {
+                try {
+                    return factory.create();
+                } catch (RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an annotator", e);
+        }
+    }
+
+    public void release(T annotator) {
+        if (annotator != null) {
+            idle.offer(annotator);
+        }
+    }
+
+    /**
+     * Whether the annotators are built on one of the models, or on a model
+     * the pool does not know.
+     */
+    public boolean isBuiltOn(Set<BaseModel> models) {
+        return model == null || models.contains(model);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getCreated() {
+        return created.get();
+    }
+}
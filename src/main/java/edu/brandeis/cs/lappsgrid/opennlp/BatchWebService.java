@@ -0,0 +1,23 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.lappsgrid.api.WebService;
+
+/**
+ * <i>BatchWebService.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * A {@link WebService} that also takes many documents in one call, so corpus
+ * jobs pay the RPC, JSON and servlet overhead once per batch instead of once
+ * per document. Exposed through the same JSON-RPC and protobuf servlets as
+ * {@link WebService#execute(String)}.
+ * <p>
+ */
+public interface BatchWebService extends WebService {
+
+    /**
+     * Executes every input as {@link #execute(String)} would.
+     *
+     * @return the results in the order of the inputs, a failed document gets
+     * its ERROR result without failing the others.
+     */
+    String[] executeBatch(String[] inputs);
+}
@@ -0,0 +1,217 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.chunker.ChunkerME;
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.model.BaseModel;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.metadata.IOSpecification;
+import org.lappsgrid.metadata.ServiceMetadata;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+import org.lappsgrid.vocabulary.Features;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * <i>Chunker.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Shallow parser: groups the tagged tokens into non-overlapping phrase chunks
+ * (NP, VP, PP, ...), a lot faster than the full {@link Parser} for clients
+ * that only need the chunks.
+ * <p>
+ * Reads the tokens and their tags from the latest POS view, and chunks each
+ * sentence of the latest sentence view in parallel, or the whole document
+ * when there is none.
+ * <p><a href="http://opennlp.sourceforge.net/models-1.5/">Models for 1.5 series</a>
+ */
+public class Chunker extends OpenNLPAbstractWebService {
+
+    private volatile AnnotatorPool<opennlp.tools.chunker.Chunker> chunkers;
+
+    public Chunker() throws OpenNLPWebServiceException {
+        loadAnnotators();
+        this.metadata = loadMetadata();
+    }
+
+    @Override
+    synchronized protected void loadAnnotators() throws OpenNLPWebServiceException {
+        final ChunkerModel model = super.loadChunkerModel();
+        chunkers = new AnnotatorPool<>(getPoolSize(), model,
+                new AnnotatorPool.Factory<opennlp.tools.chunker.Chunker>() {
+                    @Override
+                    public opennlp.tools.chunker.Chunker create() {
+                        return new ChunkerME(model);
+                    }
+                });
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators() {
+        chunkers = null;
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators(Set<BaseModel> dropped) {
+        if (chunkers != null && chunkers.isBuiltOn(dropped)) {
+            chunkers = null;
+        }
+    }
+
+    private AnnotatorPool<opennlp.tools.chunker.Chunker> chunkers() {
+        AnnotatorPool<opennlp.tools.chunker.Chunker> pool = chunkers;
+        if (pool == null) {
+            synchronized (this) {
+                if (chunkers == null) {
+                    try {
+                        loadAnnotators();
+                    } catch (OpenNLPWebServiceException e) {
+                        throw new RuntimeException("Fail to initialize Chunker", e);
+                    }
+                }
+                pool = chunkers;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Chunks a tagged sentence, the spans are token indexes.
+     */
+    public Span[] chunk(String[] tokens, String[] tags) {
+        AnnotatorPool<opennlp.tools.chunker.Chunker> pool = chunkers();
+        opennlp.tools.chunker.Chunker chunker = pool.borrow();
+        try {
+            return chunker.chunkAsSpans(tokens, tags);
+        } finally {
+            pool.release(chunker);
+        }
+    }
+
+    /**
+     * Chunks each sentence as its own sequence, in parallel, and returns the
+     * spans as document token indexes.
+     */
+    protected List<Span> chunkBySentence(Document document, Spans tokenSpans,
+                                         final String[] tokens, final String[] tags)
+            throws OpenNLPWebServiceException {
+        Spans sentences = document.latest(Uri.SENTENCE, null);
+        List<int[]> ranges = null;
+        if (sentences != null) {
+            ranges = tokenSpans.ranges(sentences);
+        }
+        if (ranges == null) {
+            ranges = new ArrayList<>();
+            ranges.add(new int[]{0, tokens.length});
+        }
+        List<Callable<Span[]>> tasks = new ArrayList<>(ranges.size());
+        for (final int[] range : ranges) {
+            tasks.add(new Callable<Span[]>() {
+                @Override
+                public Span[] call() {
+                    return chunk(Arrays.copyOfRange(tokens, range[0], range[1]),
+                            Arrays.copyOfRange(tags, range[0], range[1]));
+                }
+            });
+        }
+        List<Span[]> results = Workers.invokeAll(tasks);
+
+        List<Span> spans = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            int offset = ranges.get(i)[0];
+            for (Span span : results.get(i)) {
+                spans.add(new Span(span.getStart() + offset, span.getEnd() + offset, span.getType()));
+            }
+        }
+        return spans;
+    }
+
+    @Override
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        return Arrays.asList(Uri.POS, Uri.SENTENCE);
+    }
+
+    @Override
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container), parameters);
+    }
+
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        logger.info("Executing");
+        String txt = document.getText();
+
+        Spans tokenSpans = document.latest(Uri.POS, Features.Token.POS);
+        if (tokenSpans == null) {
+            throw new OpenNLPWebServiceException(String.format(
+                    "Wrong Input: CANNOT find %s within previous annotations",
+                    Uri.POS));
+        }
+        String[] tokens = tokenSpans.getWords();
+        String[] tags = tokenSpans.getFeatures();
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == null) {
+                throw new OpenNLPWebServiceException(String.format(
+                        "Wrong Input: CANNOT find the %s of token %s", Features.Token.POS, tokenSpans.getId(i)));
+            }
+        }
+
+        View view = document.getContainer().newView();
+        view.addContains(Uri.CHUNK,
+                getProducer(),
+                "chunker:opennlp");
+
+        boolean keepText = PROFILE_FULL.equals(getProfile(parameters));
+        int count = 0;
+        for (Span span : chunkBySentence(document, tokenSpans, tokens, tags)) {
+            int start = tokenSpans.getStart(span.getStart());
+            int end = tokenSpans.getEnd(span.getEnd() - 1);
+            Annotation ann = view.newAnnotation(CHUNK_ID + count++, Uri.CHUNK, start, end);
+            ann.setLabel(span.getType());
+            if (keepText) {
+                ann.addFeature("word", txt.substring(start, end));
+            }
+        }
+        return view;
+    }
+
+    public String loadMetadata() {
+        ServiceMetadata meta = new ServiceMetadata();
+        meta.setName(this.getClass().getName());
+        meta.setDescription("chunker:opennlp");
+        meta.setVersion(getVersion());
+        meta.setVendor("http://www.cs.brandeis.edu/");
+        meta.setLicense(Uri.APACHE2);
+
+        IOSpecification requires = new IOSpecification();
+        requires.setEncoding("UTF-8");
+        requires.addLanguage("en");
+        requires.addFormat(Uri.LAPPS);
+        requires.addAnnotation(Uri.TOKEN);
+        requires.addAnnotation(Uri.POS);
+
+        IOSpecification produces = new IOSpecification();
+        produces.setEncoding("UTF-8");
+        produces.addLanguage("en");
+        produces.addFormat(Uri.LAPPS);
+        produces.addAnnotation(Uri.CHUNK);
+
+        meta.setRequires(requires);
+        meta.setProduces(produces);
+        Data<ServiceMetadata> data = new Data<>(Uri.META, meta);
+        return data.asPrettyJson();
+    }
+}
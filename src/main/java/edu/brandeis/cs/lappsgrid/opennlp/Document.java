@@ -0,0 +1,84 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <i>Document.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * The container of a request together with the compact {@link Spans} of its
+ * views. A view is read into spans once, and a service adding a view puts
+ * the spans it built the view from, so the services of a {@link Pipeline}
+ * pass the tokens, tags and sentences on as arrays instead of reading them
+ * back from the LIF annotations at every stage. A service run on its own
+ * gets a document that does not keep the spans, no later stage reads them.
+ * <p>
+ * A document belongs to one request and is not thread safe.
+ */
+public class Document {
+
+    private final Container container;
+    private final boolean keepsSpans;
+    private final Map<View, Spans> spans = new IdentityHashMap<>();
+
+    public Document(Container container) {
+        this(container, false);
+    }
+
+    /**
+     * @param keepsSpans whether later stages read the spans of the views
+     *                   added, see {@link #put}
+     */
+    public Document(Container container, boolean keepsSpans) {
+        this.container = container;
+        this.keepsSpans = keepsSpans;
+    }
+
+    public Container getContainer() {
+        return container;
+    }
+
+    public String getText() {
+        return container.getText();
+    }
+
+    /**
+     * The spans of the latest view containing the type, with the given
+     * feature (null for none), or null when there is no such view.
+     */
+    public Spans latest(String type, String feature) throws OpenNLPWebServiceException {
+        List<View> views = container.findViewsThatContain(type);
+        if (views.size() == 0) {
+            return null;
+        }
+        View view = views.get(views.size() - 1);
+        Spans cached = spans.get(view);
+        if (cached != null && (feature == null || feature.equals(cached.getFeature()))) {
+            return cached;
+        }
+        Spans read = Spans.of(view.getAnnotations(), container.getText(), feature);
+        spans.put(view, read);
+        return read;
+    }
+
+    /**
+     * Whether the spans a service builds its view from are read by later
+     * stages, services only build them for {@link #put} when they are.
+     */
+    public boolean keepsSpans() {
+        return keepsSpans;
+    }
+
+    /**
+     * Records the spans a view was built from, when the document keeps them.
+     */
+    public void put(View view, Spans viewSpans) {
+        if (keepsSpans) {
+            spans.put(view, viewSpans);
+        }
+    }
+}
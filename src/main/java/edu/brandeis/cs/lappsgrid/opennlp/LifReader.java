@@ -0,0 +1,188 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lappsgrid.serialization.lif.Container;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <i>LifReader.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Reads a LIF {@link org.lappsgrid.serialization.Data} input in one pass of a
+ * streaming parser, without mapping the views. Only the discriminator, the
+ * parameters, the text and the "contains" metadata of each view are read;
+ * the views themselves are skipped and remembered by their position in the
+ * input.
+ * <p>
+ * {@link #getContainer(Collection)} then maps just the latest view of each
+ * annotation type a service reads, so the upstream views a service does not
+ * need are never materialized. They are still in the output, which is copied
+ * from the input by {@link LifWriter}.
+ */
+public class LifReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+    private static final TypeReference<Map<String, Object>> PARAMETERS =
+            new TypeReference<Map<String, Object>>() {};
+
+    private static class ViewRef {
+        final int start;
+        final int end;
+        final Set<String> contains;
+
+        ViewRef(int start, int end, Set<String> contains) {
+            this.start = start;
+            this.end = end;
+            this.contains = contains;
+        }
+    }
+
+    private final String input;
+    private String discriminator;
+    private Map<String, Object> parameters;
+    private Object payload;
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+    private final List<ViewRef> views = new ArrayList<>();
+
+    private LifReader(String input) {
+        this.input = input;
+    }
+
+    /**
+     * Scans the input JSON.
+     *
+     * @throws IOException when the input is not a JSON object, the caller
+     *                     should then parse it completely.
+     */
+    public static LifReader scan(String input) throws IOException {
+        LifReader reader = new LifReader(input);
+        JsonParser parser = FACTORY.createParser(input);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Input is not a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "discriminator":
+                        reader.discriminator = parser.getText();
+                        break;
+                    case "parameters":
+                        reader.parameters = value == JsonToken.VALUE_NULL ? null : parser.<Map<String, Object>>readValueAs(PARAMETERS);
+                        break;
+                    case "payload":
+                        if (value == JsonToken.START_OBJECT) {
+                            reader.scanPayload(parser);
+                        } else {
+                            reader.payload = parser.readValueAs(Object.class);
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } finally {
+            parser.close();
+        }
+        return reader;
+    }
+
+    private void scanPayload(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("views".equals(name) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                        throw new IOException("LIF view is not a JSON object.");
+                    }
+                    scanView(parser);
+                }
+            } else {
+                fields.put(name, parser.readValueAs(Object.class));
+            }
+        }
+    }
+
+    private void scanView(JsonParser parser) throws IOException {
+        // the current location is right after the brace, the token location
+        // of an array element may point at the comma before it
+        int start = (int) parser.getCurrentLocation().getCharOffset() - 1;
+        Set<String> contains = Collections.emptySet();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("metadata".equals(name) && parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                Map metadata = parser.readValueAs(Map.class);
+                if (metadata.get("contains") instanceof Map) {
+                    contains = ((Map) metadata.get("contains")).keySet();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        int end = (int) parser.getCurrentLocation().getCharOffset();
+        views.add(new ViewRef(start, end, contains));
+    }
+
+    public String getDiscriminator() {
+        return discriminator;
+    }
+
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * The payload when it is not a JSON object, e.g. the text of a TEXT input.
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    /**
+     * Maps the payload into a container holding the text and, for each
+     * annotation type, the latest view that contains it. With null types,
+     * all the views are kept.
+     */
+    public Container getContainer(Collection<String> types) throws IOException {
+        List<Map> selected = new ArrayList<>();
+        for (int i = 0; i < views.size(); i++) {
+            if (types == null || isLatest(i, types)) {
+                ViewRef view = views.get(i);
+                selected.add(MAPPER.readValue(input.substring(view.start, view.end), Map.class));
+            }
+        }
+        Map<String, Object> map = new LinkedHashMap<>(fields);
+        map.put("views", selected);
+        return new Container(map);
+    }
+
+    private boolean isLatest(int index, Collection<String> types) {
+        for (String type : types) {
+            if (views.get(index).contains.contains(type)) {
+                boolean later = false;
+                for (int j = index + 1; j < views.size() && !later; j++) {
+                    later = views.get(j).contains.contains(type);
+                }
+                if (!later) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
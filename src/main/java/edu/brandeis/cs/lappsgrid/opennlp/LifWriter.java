@@ -0,0 +1,224 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * <i>LifWriter.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Writes the LIF output of a service without serializing the whole
+ * {@link Container} again. The input JSON is copied through token by token,
+ * only the discriminator and "@context" are rewritten and the parameters
+ * dropped, and the new views are written at the end of the "views" array,
+ * one annotation at a time.
+ * <p>
+ * The output is the same JSON as {@code Serializer.toJson(new Data<>(Uri.LIF, container))},
+ * but the cost of the text and the upstream views is a copy instead of a
+ * full object mapping.
+ * <p>
+ * A {@link Stream} view is written as its service produces the annotations,
+ * which are never collected, so a very large document does not need one
+ * {@link Annotation} per span in memory.
+ */
+public class LifWriter {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * A view whose annotations are written one by one as the service produces
+     * them, instead of being collected in the {@link View} first.
+     */
+    public interface Stream {
+        /**
+         * The view, with its metadata and without annotations.
+         */
+        View getView();
+
+        /**
+         * Writes the annotations of the view with {@link LifWriter#writeSpan}
+         * and returns how many were written.
+         */
+        int write(LifWriter writer) throws IOException;
+    }
+
+    private final JsonGenerator generator;
+
+    LifWriter(JsonGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Copies the input LIF {@link org.lappsgrid.serialization.Data} and appends
+     * the new views to its views.
+     *
+     * @throws IOException when the input is not a LIF object, the caller
+     *                     should then serialize the container instead.
+     */
+    public static String append(String input, List<View> newViews) throws IOException {
+        return append(input, newViews, null);
+    }
+
+    /**
+     * Copies the input LIF and appends the new views and then the streamed
+     * view, when not null.
+     */
+    public static String append(String input, List<View> newViews, Stream stream) throws IOException {
+        int size = input.length() + 256;
+        for (View view : newViews) {
+            size += 64 * view.getAnnotations().size();
+        }
+        StringWriter out = new StringWriter(size);
+        JsonParser parser = FACTORY.createParser(input);
+        JsonGenerator generator = FACTORY.createGenerator(out);
+        try {
+            LifWriter writer = new LifWriter(generator);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("LIF input is not a JSON object.");
+            }
+            generator.writeStartObject();
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "discriminator":
+                        generator.writeStringField(name, Uri.LIF);
+                        break;
+                    case "parameters":
+                        parser.skipChildren();
+                        break;
+                    case "payload":
+                        generator.writeFieldName(name);
+                        writer.copyPayload(parser, newViews, stream);
+                        break;
+                    default:
+                        generator.writeFieldName(name);
+                        generator.copyCurrentStructure(parser);
+                }
+            }
+            if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw new IOException("Malformed LIF input.");
+            }
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+            parser.close();
+        }
+        return out.toString();
+    }
+
+    private void copyPayload(JsonParser parser, List<View> newViews, Stream stream) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new IOException("LIF payload is not a JSON object.");
+        }
+        generator.writeStartObject();
+        boolean context = false;
+        boolean views = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("@context".equals(name)) {
+                parser.skipChildren();
+                generator.writeStringField(name, Container.REMOTE_CONTEXT);
+                context = true;
+            } else if ("views".equals(name)) {
+                generator.writeArrayFieldStart(name);
+                if (value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        generator.copyCurrentStructure(parser);
+                    }
+                } else if (value != JsonToken.VALUE_NULL) {
+                    throw new IOException("LIF views are not a JSON array.");
+                }
+                writeViews(newViews, stream);
+                generator.writeEndArray();
+                views = true;
+            } else {
+                generator.writeFieldName(name);
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        if (!context) {
+            generator.writeStringField("@context", Container.REMOTE_CONTEXT);
+        }
+        if (!views) {
+            generator.writeArrayFieldStart("views");
+            writeViews(newViews, stream);
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeViews(List<View> views, Stream stream) throws IOException {
+        for (View view : views) {
+            writeView(view);
+        }
+        if (stream != null) {
+            beginView(stream.getView());
+            stream.write(this);
+            endView();
+        }
+    }
+
+    private void writeView(View view) throws IOException {
+        beginView(view);
+        for (Annotation annotation : view.getAnnotations()) {
+            writeAnnotation(annotation);
+        }
+        endView();
+    }
+
+    /**
+     * Starts a view, its id and metadata are written, the annotations follow
+     * with {@link #writeAnnotation(Annotation)}.
+     */
+    void beginView(View view) throws IOException {
+        generator.writeStartObject();
+        if (view.getId() != null) {
+            generator.writeStringField("id", view.getId());
+        }
+        generator.writeFieldName("metadata");
+        generator.writeRawValue(Serializer.toJson(view.getMetadata()));
+        generator.writeArrayFieldStart("annotations");
+    }
+
+    void writeAnnotation(Annotation annotation) throws IOException {
+        generator.writeRawValue(Serializer.toJson(annotation));
+    }
+
+    /**
+     * Writes an annotation with a single string feature, or none when the
+     * feature is null, the same JSON as the {@link Annotation} would be,
+     * without creating it.
+     */
+    public void writeSpan(String id, String type, long start, long end, String feature, String value)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", id);
+        generator.writeNumberField("start", start);
+        generator.writeNumberField("end", end);
+        generator.writeStringField("@type", type);
+        if (feature != null) {
+            generator.writeObjectFieldStart("features");
+            generator.writeStringField(feature, value);
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    void endView() throws IOException {
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+}
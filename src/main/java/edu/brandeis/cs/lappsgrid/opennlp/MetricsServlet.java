@@ -0,0 +1,59 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * <i>MetricsServlet.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Lists the {@link ServiceMetrics} of the services and the counters of the
+ * {@link ResultCache} as plain text, one "&lt;name&gt; &lt;value&gt;" line
+ * per metric, times in milliseconds.
+ * <p>
+ */
+public class MetricsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        PrintWriter writer = response.getWriter();
+        write(writer);
+        writer.flush();
+    }
+
+    static void write(PrintWriter writer) {
+        for (Map.Entry<String, ServiceMetrics> entry : ServiceMetrics.getAll().entrySet()) {
+            String name = entry.getKey();
+            ServiceMetrics metrics = entry.getValue();
+            writer.println(name + ".requests " + metrics.getRequests());
+            writer.println(name + ".errors " + metrics.getErrors());
+            writer.println(name + ".rejected " + metrics.getRejected());
+            writer.println(name + ".chars " + metrics.getChars());
+            writer.println(name + ".tokens " + metrics.getTokens());
+            writer.println(name + ".sentences " + metrics.getSentences());
+            writer.println(name + ".annotations " + metrics.getAnnotations());
+            writer.println(name + ".parse.time " + metrics.getParseTimeMillis());
+            writer.println(name + ".parse.max " + metrics.getParseMaxMillis());
+            writer.println(name + ".annotate.time " + metrics.getAnnotateTimeMillis());
+            writer.println(name + ".annotate.max " + metrics.getAnnotateMaxMillis());
+            writer.println(name + ".serialize.time " + metrics.getSerializeTimeMillis());
+            writer.println(name + ".serialize.max " + metrics.getSerializeMaxMillis());
+        }
+        ResultCache cache = ResultCache.getInstance();
+        writer.println("cache.enabled " + cache.isEnabled());
+        writer.println("cache.entries " + cache.getEntries());
+        writer.println("cache.size " + cache.getSize());
+        writer.println("cache.hits " + cache.getHits());
+        writer.println("cache.misses " + cache.getMisses());
+        writer.println("cache.evictions " + cache.getEvictions());
+    }
+}
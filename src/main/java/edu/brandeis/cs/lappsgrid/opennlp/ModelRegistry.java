@@ -0,0 +1,625 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.parser.ParserModel;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.util.model.BaseModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <i>ModelRegistry.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Single place where the pre-trained models listed in models.properties are
+ * loaded and kept. Every model is loaded at most once, services asking for a
+ * model that is being loaded wait for it instead of loading it again.
+ * <p>
+ * At webapp startup {@link #loadAll()} loads the configured models in parallel,
+ * and the node is marked {@link #isReady() ready} once they are warmed up.
+ * <p>
+ * With "registry.reload-interval" set, a monitor thread watches models.properties,
+ * the override file "registry.models-path" and the model files on disk. Changed
+ * models are loaded next to the old ones and swapped in once loaded, so requests
+ * never wait for a reload. With "registry.idle-timeout" set, models that were not
+ * used for that long are unloaded, and loaded again on their next use.
+ * Services hear about both through a {@link Listener}, which names the models
+ * that were dropped so that only the annotators built on them are rebuilt.
+ */
+public class ModelRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(ModelRegistry.class);
+
+    private static final ModelRegistry INSTANCE = new ModelRegistry();
+
+    /**
+     * Model classes of the keys of models.properties that hold binary models.
+     */
+    static final Map<String, Class<? extends BaseModel>> MODEL_CLASSES = new LinkedHashMap<>();
+    static {
+        MODEL_CLASSES.put("Tokenizer", TokenizerModel.class);
+        MODEL_CLASSES.put("Sentence-Detector", SentenceModel.class);
+        MODEL_CLASSES.put("Part-of-Speech-Tagger", POSModel.class);
+        MODEL_CLASSES.put("POS-Tagger", POSModel.class);
+        MODEL_CLASSES.put("Name-Finder", TokenNameFinderModel.class);
+        MODEL_CLASSES.put("Chunker", ChunkerModel.class);
+        MODEL_CLASSES.put("Parser", ParserModel.class);
+    }
+
+    static final String DEFAULT_PRELOAD = "Tokenizer,Sentence-Detector,Part-of-Speech-Tagger,POS-Tagger,Chunker,Name-Finder,Parser";
+
+    /**
+     * Told when models were swapped or unloaded, so that annotators built on
+     * the old models can be dropped. Listeners are weakly referenced.
+     */
+    public interface Listener {
+        /**
+         * @param dropped the models swapped out or unloaded, compared by
+         *                identity, or null when the model paths changed and
+         *                any model may have changed
+         */
+        void modelsChanged(Set<BaseModel> dropped);
+    }
+
+    private static class Entry {
+        final String modelName;
+        final Class<? extends BaseModel> modelClass;
+        final FutureTask<BaseModel> task;
+        final long stamp;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(String modelName, Class<? extends BaseModel> modelClass, FutureTask<BaseModel> task, long stamp) {
+            this.modelName = modelName;
+            this.modelClass = modelClass;
+            this.task = task;
+            this.stamp = stamp;
+        }
+
+        /**
+         * The model, or null while it is loading or when loading failed.
+         */
+        BaseModel loaded() {
+            if (!task.isDone()) {
+                return null;
+            }
+            try {
+                return task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                return null;
+            }
+        }
+    }
+
+    private volatile Properties modelPaths = new Properties();
+    private volatile Map<String, Long> watchedFiles = new HashMap<>();
+    private final ConcurrentMap<String, Entry> models = new ConcurrentHashMap<>();
+    // the entries of the loaded models, the models do not override equals,
+    // so they are looked up by identity
+    private final ConcurrentMap<BaseModel, Entry> entries = new ConcurrentHashMap<>();
+    private final List<WeakReference<Listener>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService monitor;
+    private volatile boolean ready = false;
+    private volatile String failure = null;
+
+    private ModelRegistry() {
+    }
+
+    public static ModelRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    Properties getModelPaths() {
+        return modelPaths;
+    }
+
+    synchronized void loadModelPaths() throws OpenNLPWebServiceException {
+        if (modelPaths.size() == 0) {
+            logger.info("Finding paths of pre-trained models.");
+            Map<String, Long> files = new HashMap<>();
+            modelPaths = readModelPaths(files);
+            watchedFiles = files;
+        } else {
+            logger.info("Found cache of the paths of pre-trained models, contains " + modelPaths.size() + " items.");
+        }
+    }
+
+    /**
+     * Reads models.properties from the classpath, overridden by the file of
+     * "registry.models-path" if any. The files read and their modification
+     * times are put in files.
+     */
+    private Properties readModelPaths(Map<String, Long> files) throws OpenNLPWebServiceException {
+        String filename = OpenNLPAbstractWebService.MODEL_PROP_FILENAME;
+        Properties properties = new Properties();
+        InputStream stream = this.getClass().getResourceAsStream(filename);
+        if (stream == null) {
+            logger.error("Fail to open \"" + filename + "\".");
+            throw new OpenNLPWebServiceException("fail to open \"" + filename + "\".");
+        }
+        try {
+            logger.info("loading " + filename);
+            properties.load(stream);
+            stream.close();
+        } catch (IOException e) {
+            logger.error("Fail to load \"" + filename + "\".");
+            throw new OpenNLPWebServiceException("fail to load \"" + filename + "\".");
+        }
+        File file = toFile(this.getClass().getResource(filename));
+        if (file != null) {
+            files.put(file.getPath(), file.lastModified());
+        }
+
+        String override = OpenNLPAbstractWebService.getConfig("registry.models-path", (String) null);
+        if (override != null) {
+            file = new File(override);
+            files.put(file.getPath(), file.lastModified());
+            if (file.isFile()) {
+                try {
+                    logger.info("loading " + file);
+                    InputStream in = new FileInputStream(file);
+                    try {
+                        properties.load(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    logger.error("Fail to load \"" + file + "\".");
+                    throw new OpenNLPWebServiceException("fail to load \"" + file + "\".");
+                }
+            }
+        }
+        return properties;
+    }
+
+    private static File toFile(URL url) {
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens a model path, a file when it exists on disk, otherwise a
+     * classpath resource. Returns null when neither exists.
+     */
+    static InputStream openResource(String modelResPath) throws IOException {
+        File file = new File(modelResPath);
+        if (file.isFile()) {
+            return new FileInputStream(file);
+        }
+        return ModelRegistry.class.getResourceAsStream(modelResPath);
+    }
+
+    /**
+     * Modification time of a model path, or -1 when it is not a plain file.
+     */
+    private static long lastModified(String modelResPath) {
+        File file = new File(modelResPath);
+        if (!file.isFile()) {
+            file = toFile(ModelRegistry.class.getResource(modelResPath));
+        }
+        return file == null ? -1 : file.lastModified();
+    }
+
+    /**
+     * Resource paths configured for a key of models.properties, the paths are
+     * separated by ":".
+     */
+    public List<String> getPaths(String key, String defaultPaths) {
+        List<String> paths = new ArrayList<>();
+        String value = modelPaths.getProperty(key, defaultPaths);
+        if (value != null) {
+            for (String path : value.split(":")) {
+                if (path.trim().length() > 0) {
+                    paths.add(path.trim());
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the model stored at the resource path, loading it if this is
+     * the first request for it.
+     */
+    public <T extends BaseModel> T getModel(final String modelName, final String modelResPath,
+                                            final Class<T> modelClass) throws OpenNLPWebServiceException {
+        Entry entry = models.get(modelResPath);
+        if (entry == null) {
+            Entry loader = newEntry(modelName, modelResPath, modelClass);
+            entry = models.putIfAbsent(modelResPath, loader);
+            if (entry == null) {
+                entry = loader;
+                loader.task.run();
+                register(loader);
+            }
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        try {
+            return modelClass.cast(entry.task.get());
+        } catch (ExecutionException e) {
+            // forget the failure, so that the next request tries again
+            models.remove(modelResPath, entry);
+            if (e.getCause() instanceof OpenNLPWebServiceException) {
+                throw (OpenNLPWebServiceException) e.getCause();
+            }
+            throw modelFails(modelName, modelResPath, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw modelFails(modelName, modelResPath, e);
+        } catch (ClassCastException e) {
+            throw modelFails(modelName, modelResPath, e);
+        }
+    }
+
+    private Entry newEntry(final String modelName, final String modelResPath,
+                           final Class<? extends BaseModel> modelClass) {
+        FutureTask<BaseModel> task = new FutureTask<>(new Callable<BaseModel>() {
+            @Override
+            public BaseModel call() throws OpenNLPWebServiceException {
+                return loadBinaryModel(modelName, modelResPath, modelClass);
+            }
+        });
+        return new Entry(modelName, modelClass, task, lastModified(modelResPath));
+    }
+
+    private void register(Entry entry) {
+        BaseModel model = entry.loaded();
+        if (model != null) {
+            entries.put(model, entry);
+        }
+    }
+
+    /**
+     * Forgets the model of an entry removed from the registry, and adds it
+     * to the dropped models.
+     */
+    private void forget(Entry entry, Set<BaseModel> dropped) {
+        BaseModel model = entry.loaded();
+        if (model != null) {
+            entries.remove(model);
+            dropped.add(model);
+        }
+    }
+
+    static Set<BaseModel> newModelSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<BaseModel, Boolean>());
+    }
+
+    /**
+     * Marks a model as used, so that it is not unloaded as idle.
+     */
+    public void touch(BaseModel model) {
+        if (model == null) {
+            return;
+        }
+        Entry entry = entries.get(model);
+        if (entry != null) {
+            entry.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    protected OpenNLPWebServiceException modelFails(String modelName, String modelResName, Throwable e) {
+        String error = String.format("Failed to open %s MODEL \"%s\".", modelName, modelResName);
+        logger.error(error);
+        logger.error(e.toString());
+        return new OpenNLPWebServiceException(error, e);
+    }
+
+    BaseModel loadBinaryModel(String modelName, String modelResPath, Class modelClass) throws OpenNLPWebServiceException {
+        logger.info(String.format("Opening a binary model for %s: %s", modelName, modelResPath));
+        InputStream stream = null;
+        ModelSnapshots snapshots = ModelSnapshots.fromConfig();
+        if (snapshots != null) {
+            stream = snapshots.open(modelResPath);
+        }
+        try {
+            if (stream == null) {
+                stream = openResource(modelResPath);
+            }
+        } catch (IOException e) {
+            throw modelFails(modelName, modelResPath, e);
+        }
+        if (stream == null) {
+            throw modelFails(modelName, modelResPath, new FileNotFoundException());
+        }
+
+        logger.info(String.format("Loading the model for %s: %s", modelName, modelResPath));
+
+        try {
+            try {
+                Constructor<? extends BaseModel> constructor = modelClass.getConstructor(InputStream.class);
+                return constructor.newInstance(stream);
+            } catch (IllegalAccessException | InstantiationException | NoSuchMethodException e) {
+                throw modelFails(modelName, modelResPath, e);
+            } catch (InvocationTargetException e) {
+                throw modelFails(modelName, modelResPath, e.getCause());
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw modelFails(modelName, modelResPath, e);
+        }
+    }
+
+    /**
+     * Loads the models of the keys listed in "registry.preload" in parallel.
+     * Failures are logged, the services report them again when they are used.
+     *
+     * @return the number of models that could not be loaded
+     */
+    public int loadAll() throws OpenNLPWebServiceException {
+        loadModelPaths();
+        String preload = OpenNLPAbstractWebService.getConfig("registry.preload", DEFAULT_PRELOAD);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (String key : preload.split(",")) {
+            final String name = key.trim();
+            final Class<? extends BaseModel> modelClass = MODEL_CLASSES.get(name);
+            if (modelClass == null) {
+                logger.warn(String.format("Unknown model key in registry.preload: %s", name));
+                continue;
+            }
+            for (final String path : getPaths(name, null)) {
+                tasks.add(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        try {
+                            getModel(name, path, modelClass);
+                            return true;
+                        } catch (OpenNLPWebServiceException e) {
+                            return false;
+                        }
+                    }
+                });
+            }
+        }
+        long start = System.currentTimeMillis();
+        int failures = 0;
+        for (Boolean loaded : Workers.invokeAll(tasks)) {
+            if (!loaded) {
+                failures++;
+            }
+        }
+        logger.info(String.format("Loaded %d of %d models in %d ms.",
+                tasks.size() - failures, tasks.size(), System.currentTimeMillis() - start));
+        return failures;
+    }
+
+    /**
+     * Adds a listener, held weakly so that its service can be collected, and
+     * drops the listeners of the services already collected.
+     */
+    public void addListener(Listener listener) {
+        List<WeakReference<Listener>> cleared = new ArrayList<>();
+        for (WeakReference<Listener> reference : listeners) {
+            if (reference.get() == null) {
+                cleared.add(reference);
+            }
+        }
+        listeners.removeAll(cleared);
+        listeners.add(new WeakReference<>(listener));
+    }
+
+    private void fireModelsChanged(Set<BaseModel> dropped) {
+        for (WeakReference<Listener> reference : listeners) {
+            Listener listener = reference.get();
+            if (listener == null) {
+                listeners.remove(reference);
+            } else {
+                listener.modelsChanged(dropped);
+            }
+        }
+    }
+
+    /**
+     * Starts the monitor thread if "registry.reload-interval" (seconds) or
+     * "registry.idle-timeout" (minutes) is set, once.
+     */
+    synchronized void startMonitor() {
+        if (monitor != null) {
+            return;
+        }
+        final int reloadInterval = OpenNLPAbstractWebService.getConfig("registry.reload-interval", 0);
+        final int idleTimeout = OpenNLPAbstractWebService.getConfig("registry.idle-timeout", 0);
+        if (reloadInterval <= 0 && idleTimeout <= 0) {
+            return;
+        }
+        long period = reloadInterval > 0 ? reloadInterval : 60;
+        monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "opennlp-model-monitor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        monitor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Set<BaseModel> dropped = newModelSet();
+                    boolean pathsChanged = false;
+                    if (reloadInterval > 0) {
+                        pathsChanged = reloadChanged(dropped);
+                    }
+                    if (idleTimeout > 0) {
+                        evictIdle(TimeUnit.MINUTES.toMillis(idleTimeout), dropped);
+                    }
+                    if (pathsChanged) {
+                        fireModelsChanged(null);
+                    } else if (dropped.size() > 0) {
+                        fireModelsChanged(dropped);
+                    }
+                } catch (Throwable th) {
+                    logger.error("Model monitor failed: " + th.toString());
+                }
+            }
+        }, period, period, TimeUnit.SECONDS);
+        logger.info(String.format("Monitoring models every %d seconds.", period));
+    }
+
+    /**
+     * Re-reads the model paths when a properties file changed, and reloads the
+     * models whose files changed. New models are fully loaded before they
+     * replace the old ones, models no longer configured are dropped.
+     *
+     * @param dropped receives the models swapped out or dropped
+     * @return true when the model paths changed
+     */
+    synchronized boolean reloadChanged(Set<BaseModel> dropped) throws OpenNLPWebServiceException {
+        boolean pathsChanged = false;
+        for (Map.Entry<String, Long> file : watchedFiles.entrySet()) {
+            if (new File(file.getKey()).lastModified() != file.getValue()) {
+                pathsChanged = true;
+            }
+        }
+        Properties previous = modelPaths;
+        Properties paths = previous;
+        Map<String, Long> files = watchedFiles;
+        if (pathsChanged) {
+            logger.info("Model paths changed, reloading them.");
+            files = new HashMap<>();
+            paths = readModelPaths(files);
+            Set<String> known = configuredPaths(previous);
+            for (Map.Entry<String, Class<? extends BaseModel>> key : MODEL_CLASSES.entrySet()) {
+                String value = paths.getProperty(key.getKey());
+                for (String path : value == null ? new String[0] : value.split(":")) {
+                    if (path.trim().length() > 0 && !known.contains(path.trim())) {
+                        try {
+                            getModel(key.getKey(), path.trim(), key.getValue());
+                        } catch (OpenNLPWebServiceException e) {
+                            // reported again by the services that use it
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<String, Entry> reloaded = new LinkedHashMap<>();
+        for (String path : models.keySet()) {
+            Entry entry = models.get(path);
+            if (entry != null && entry.loaded() != null && entry.stamp != lastModified(path)) {
+                Entry replacement = newEntry(entry.modelName, path, entry.modelClass);
+                replacement.task.run();
+                if (replacement.loaded() != null) {
+                    reloaded.put(path, replacement);
+                } else {
+                    logger.error(String.format("Keeping the old model %s, the new one fails to load.", path));
+                }
+            }
+        }
+
+        modelPaths = paths;
+        watchedFiles = files;
+        for (Map.Entry<String, Entry> entry : reloaded.entrySet()) {
+            logger.info(String.format("Swapping in the new model %s.", entry.getKey()));
+            register(entry.getValue());
+            Entry old = models.put(entry.getKey(), entry.getValue());
+            if (old != null) {
+                forget(old, dropped);
+            }
+        }
+        // drop the models that were configured before and are not any more,
+        // models used through the defaults of the services are left alone
+        if (pathsChanged) {
+            Set<String> configured = configuredPaths(paths);
+            for (String path : configuredPaths(previous)) {
+                Entry entry = configured.contains(path) ? null : models.remove(path);
+                if (entry != null) {
+                    logger.info(String.format("Unloading model %s, no longer configured.", path));
+                    forget(entry, dropped);
+                }
+            }
+        }
+        return pathsChanged;
+    }
+
+    private static Set<String> configuredPaths(Properties paths) {
+        Set<String> configured = new HashSet<>();
+        for (String key : MODEL_CLASSES.keySet()) {
+            String value = paths.getProperty(key);
+            if (value != null) {
+                for (String path : value.split(":")) {
+                    if (path.trim().length() > 0) {
+                        configured.add(path.trim());
+                    }
+                }
+            }
+        }
+        return configured;
+    }
+
+    /**
+     * Unloads the models that were not used for the given time.
+     *
+     * @param dropped receives the models unloaded
+     */
+    void evictIdle(long idleMillis, Set<BaseModel> dropped) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> entry : models.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.loaded() != null && now - value.lastAccess > idleMillis
+                    && models.remove(entry.getKey(), value)) {
+                logger.info(String.format("Unloading model %s, idle for %d s.",
+                        entry.getKey(), (now - value.lastAccess) / 1000));
+                forget(value, dropped);
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * Why the startup failed, null while it has not.
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    void setFailed(String failure) {
+        this.failure = failure;
+        this.ready = false;
+    }
+}
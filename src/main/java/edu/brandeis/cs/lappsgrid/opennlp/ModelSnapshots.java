@@ -0,0 +1,248 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * <i>ModelSnapshots.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Fast-start copies of the binary models. A snapshot is the model zip
+ * re-packed with uncompressed entries, behind a header that records the
+ * length and modification time of the original .bin. Snapshots are
+ * memory-mapped when opened, so loading a model skips inflating the
+ * classpath resource.
+ * <p>
+ * A snapshot whose length or modification time does not match the original
+ * resource is stale, and the original .bin is used (and the snapshot rebuilt)
+ * instead. Both are read from the file system or the jar directory, the
+ * original is not read when the snapshot is current.
+ * Snapshots are written on first use, or ahead of time with {@link #main}.
+ */
+public class ModelSnapshots {
+    private static final Logger logger = LoggerFactory.getLogger(ModelSnapshots.class);
+
+    static final byte[] MAGIC = {'O', 'N', 'L', 'P', 'S', 'N', 'A', 'P'};
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = MAGIC.length + 4 + 8 + 8;
+
+    private final File dir;
+
+    public ModelSnapshots(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Snapshots of the directory configured with "registry.snapshot-dir", or
+     * null when snapshots are disabled.
+     */
+    static ModelSnapshots fromConfig() {
+        String path = OpenNLPAbstractWebService.getConfig("registry.snapshot-dir", (String) null);
+        return path == null ? null : new ModelSnapshots(new File(path));
+    }
+
+    public File getFile(String modelResPath) {
+        String name = modelResPath.replaceAll("^/+", "").replace('/', '_');
+        return new File(dir, name + ".snapshot");
+    }
+
+    /**
+     * Opens the snapshot of a model, rebuilding it first when it is missing or
+     * stale. Returns null when no usable snapshot can be made, the caller
+     * should then read the original resource.
+     */
+    public InputStream open(String modelResPath) {
+        try {
+            long[] source = stamp(modelResPath);
+            if (source == null) {
+                return null;
+            }
+            InputStream stream = map(getFile(modelResPath), source);
+            if (stream == null) {
+                write(modelResPath);
+                stream = map(getFile(modelResPath), source);
+            }
+            return stream;
+        } catch (IOException e) {
+            logger.warn(String.format("Cannot use the snapshot of %s: %s", modelResPath, e.toString()));
+            return null;
+        }
+    }
+
+    /**
+     * Length and modification time of a model file or resource, without
+     * reading it, or null when it does not exist.
+     */
+    static long[] stamp(String modelResPath) throws IOException {
+        File file = new File(modelResPath);
+        if (file.isFile()) {
+            return new long[]{file.length(), file.lastModified()};
+        }
+        URL url = ModelRegistry.class.getResource(modelResPath);
+        if (url == null) {
+            return null;
+        }
+        // a file, or the entry of a jar: its length and the time of the jar
+        URLConnection connection = url.openConnection();
+        return new long[]{connection.getContentLengthLong(), connection.getLastModified()};
+    }
+
+    private InputStream map(File file, long[] source) throws IOException {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION
+                || buffer.getLong() != source[0] || buffer.getLong() != source[1]) {
+            logger.info(String.format("Snapshot %s is stale.", file));
+            return null;
+        }
+        return new MappedInputStream(buffer);
+    }
+
+    /**
+     * Converts a model resource into its snapshot.
+     */
+    public File write(String modelResPath) throws IOException {
+        long[] source = stamp(modelResPath);
+        if (source == null) {
+            throw new IOException("Model resource not found: " + modelResPath);
+        }
+        File file = getFile(modelResPath);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create snapshot directory " + dir);
+        }
+        logger.info(String.format("Writing snapshot of %s to %s", modelResPath, file));
+
+        // write next to the target and rename, so readers never see half a file
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            ZipInputStream in = new ZipInputStream(new BufferedInputStream(
+                    ModelRegistry.openResource(modelResPath)));
+            try {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source[0]);
+                out.writeLong(source[1]);
+                ZipOutputStream zip = new ZipOutputStream(out);
+                byte[] buffer = new byte[64 * 1024];
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        content.write(buffer, 0, n);
+                    }
+                    byte[] bytes = content.toByteArray();
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    ZipEntry stored = new ZipEntry(entry.getName());
+                    stored.setMethod(ZipEntry.STORED);
+                    stored.setSize(bytes.length);
+                    stored.setCompressedSize(bytes.length);
+                    stored.setCrc(crc.getValue());
+                    zip.putNextEntry(stored);
+                    zip.write(bytes);
+                    zip.closeEntry();
+                }
+                zip.finish();
+            } finally {
+                in.close();
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Cannot rename " + tmp + " to " + file);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+        return file;
+    }
+
+    private static class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Build step: writes the snapshots of every model listed in models.properties
+     * into the directory given as the first argument, or else registry.snapshot-dir.
+     * The settings are read as by the service, so registry.models-path applies.
+     */
+    public static void main(String[] args) throws Exception {
+        OpenNLPAbstractWebService.loadConfig();
+        String dir = args.length == 1 ? args[0]
+                : OpenNLPAbstractWebService.getConfig("registry.snapshot-dir", (String) null);
+        if (args.length > 1 || dir == null) {
+            System.err.println("Usage: java " + ModelSnapshots.class.getName() + " [<snapshot-dir>]");
+            System.exit(1);
+        }
+        ModelSnapshots snapshots = new ModelSnapshots(new File(dir));
+        ModelRegistry registry = ModelRegistry.getInstance();
+        registry.loadModelPaths();
+        for (String key : ModelRegistry.MODEL_CLASSES.keySet()) {
+            for (String path : registry.getPaths(key, null)) {
+                try {
+                    snapshots.write(path);
+                } catch (IOException e) {
+                    logger.error(String.format("Cannot write the snapshot of %s: %s", path, e.toString()));
+                }
+            }
+        }
+    }
+}
@@ -4,11 +4,11 @@ import opennlp.tools.namefind.NameFinderME;
 import opennlp.tools.namefind.TokenNameFinder;
 import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.util.Span;
+import opennlp.tools.util.model.BaseModel;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
@@ -16,8 +16,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * <i>NamedEntityRecognizer.java</i> Language Application Grids (<b>LAPPS</b>)
@@ -35,7 +39,8 @@ public class NamedEntityRecognizer extends OpenNLPAbstractWebService {
 
     protected static final Logger logger = LoggerFactory.getLogger(NamedEntityRecognizer.class);
 
-    private List<TokenNameFinder> nameFinders = new LinkedList<> ();
+    // one pool per Name-Finder model, in the order of models.properties
+    private volatile List<AnnotatorPool<TokenNameFinder>> nameFinders;
 
     public NamedEntityRecognizer() throws OpenNLPWebServiceException {
         loadAnnotators();
@@ -44,24 +49,143 @@ public class NamedEntityRecognizer extends OpenNLPAbstractWebService {
 
     @Override
     synchronized protected void loadAnnotators() throws OpenNLPWebServiceException {
-        super.loadNameFinderModels();
-        for (TokenNameFinderModel model : nameFinderModels) {
-            nameFinders.add(new NameFinderME(model));
+        List<AnnotatorPool<TokenNameFinder>> pools = new ArrayList<>();
+        for (final TokenNameFinderModel model : super.loadNameFinderModels()) {
+            pools.add(new AnnotatorPool<>(getPoolSize(), model,
+                    new AnnotatorPool.Factory<TokenNameFinder>() {
+                        @Override
+                        public TokenNameFinder create() {
+                            return new NameFinderME(model);
+                        }
+                    }));
         }
+        nameFinders = pools;
     }
 
-    public Span[] find(String[] tokens) {
+    @Override
+    synchronized protected void unloadAnnotators() {
+        nameFinders = null;
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators(Set<BaseModel> dropped) {
+        // the pools of the other models are rebuilt on the models still loaded
+        if (nameFinders != null) {
+            for (AnnotatorPool<TokenNameFinder> pool : nameFinders) {
+                if (pool.isBuiltOn(dropped)) {
+                    nameFinders = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<AnnotatorPool<TokenNameFinder>> nameFinders() {
+        List<AnnotatorPool<TokenNameFinder>> pools = nameFinders;
+        if (pools == null) {
+            synchronized (this) {
+                if (nameFinders == null) {
+                    try {
+                        loadAnnotators();
+                    } catch (OpenNLPWebServiceException e) {
+                        throw new RuntimeException(
+                                "Fail to initialize NamedEntityRecognizer", e);
+                    }
+                }
+                pools = nameFinders;
+            }
+        }
+        return pools;
+    }
+
+    private Span[] find(AnnotatorPool<TokenNameFinder> pool, String[] tokens) {
+        TokenNameFinder nameFinder = pool.borrow();
+        try {
+            return nameFinder.find(tokens);
+        } finally {
+            // adaptive data must not leak into the next document
+            nameFinder.clearAdaptiveData();
+            pool.release(nameFinder);
+        }
+    }
+
+    /**
+     * Runs every Name-Finder model sentence by sentence. The sentences are
+     * cut into one contiguous batch per annotator and the batches run in
+     * parallel. The adaptive data of a finder is cleared after every
+     * sentence, so the spans do not depend on how the sentences are batched
+     * (on the pool size). The spans are returned per model, with
+     * document-wide token indexes and in document order.
+     */
+    private List<List<Span>> findBySentence(final String[] tokens, List<int[]> sentences) {
+        List<AnnotatorPool<TokenNameFinder>> nameFinders = nameFinders();
         if (nameFinders.size() == 0) {
-            try {
-                loadAnnotators();
-            } catch (OpenNLPWebServiceException e) {
-                throw new RuntimeException(
-                        "Fail to initialize NamedEntityRecognizer", e);
+            return new ArrayList<>();
+        }
+        int batchCount = Math.min(sentences.size(), getPoolSize());
+        int batchSize = (sentences.size() + batchCount - 1) / batchCount;
+        List<Callable<List<Span>>> tasks = new ArrayList<>();
+        for (final AnnotatorPool<TokenNameFinder> pool : nameFinders) {
+            for (int from = 0; from < sentences.size(); from += batchSize) {
+                final List<int[]> batch = sentences.subList(from, Math.min(from + batchSize, sentences.size()));
+                tasks.add(new Callable<List<Span>>() {
+                    @Override
+                    public List<Span> call() {
+                        List<Span> spans = new ArrayList<>();
+                        TokenNameFinder nameFinder = pool.borrow();
+                        try {
+                            for (int[] range : batch) {
+                                String[] sentence = Arrays.copyOfRange(tokens, range[0], range[1]);
+                                for (Span span : nameFinder.find(sentence)) {
+                                    spans.add(new Span(span.getStart() + range[0],
+                                            span.getEnd() + range[0], span.getType()));
+                                }
+                                nameFinder.clearAdaptiveData();
+                            }
+                        } finally {
+                            nameFinder.clearAdaptiveData();
+                            pool.release(nameFinder);
+                        }
+                        return spans;
+                    }
+                });
             }
         }
+        List<List<Span>> results = Workers.invokeAll(tasks);
+
+        int batchesPerModel = tasks.size() / nameFinders.size();
+        List<List<Span>> spansPerModel = new ArrayList<>(nameFinders.size());
+        for (int m = 0; m < nameFinders.size(); m++) {
+            List<Span> spans = new ArrayList<>();
+            for (List<Span> batchSpans : results.subList(m * batchesPerModel, (m + 1) * batchesPerModel)) {
+                spans.addAll(batchSpans);
+            }
+            spansPerModel.add(spans);
+        }
+        return spansPerModel;
+    }
+
+    /**
+     * Runs every Name-Finder model over the tokens in parallel, the spans
+     * are returned per model in the order of the models.
+     */
+    private List<Span[]> findAll(final String[] tokens) {
+        List<AnnotatorPool<TokenNameFinder>> nameFinders = nameFinders();
+        List<Callable<Span[]>> tasks = new ArrayList<>(nameFinders.size());
+        for (final AnnotatorPool<TokenNameFinder> pool : nameFinders) {
+            tasks.add(new Callable<Span[]>() {
+                @Override
+                public Span[] call() {
+                    return find(pool, tokens);
+                }
+            });
+        }
+        return Workers.invokeAll(tasks);
+    }
+
+    public Span[] find(String[] tokens) {
         ArrayList<Span> spanArr = new ArrayList<Span>(16);
-        for (TokenNameFinder nameFinder : nameFinders) {
-            Span[] partSpans = nameFinder.find(tokens);
+        for (Span[] partSpans : findAll(tokens)) {
             for (Span span:partSpans)
                 spanArr.add(span);
         }
@@ -70,32 +194,48 @@ public class NamedEntityRecognizer extends OpenNLPAbstractWebService {
     }
 
     @Override
-    public String execute(Container container) throws OpenNLPWebServiceException {
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        return Arrays.asList(Uri.TOKEN, Uri.SENTENCE);
+    }
+
+    @Override
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container), parameters);
+    }
+
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
         logger.info("Executing");
-        String txt = container.getText();
-        List<View> tokenViews = container.findViewsThatContain(Uri.TOKEN);
-        if (tokenViews.size() == 0) {
+        String txt = document.getText();
+        Spans tokenSpans = document.latest(Uri.TOKEN, null);
+        if (tokenSpans == null) {
             throw new OpenNLPWebServiceException(String.format(
                     "Wrong Input: CANNOT find %s within previous annotations",
                     Uri.TOKEN));
         }
-        List<Annotation> tokenAnns = tokenViews.get(tokenViews.size() - 1).getAnnotations();
 
 
-        View view = container.newView();
+        View view = document.getContainer().newView();
         view.addContains(Uri.NE,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
+                getProducer(),
                 "ner:opennlp");
+        boolean keepText = PROFILE_FULL.equals(getProfile(parameters));
         int count = 0;
-        if (tokenAnns == null || tokenAnns.size() == 0)  {
+        if (tokenSpans.size() == 0)  {
             // is word.
             if (txt.matches("[a-zA-Z]+")) {
-                for (TokenNameFinder nameFinder : nameFinders) {
-                    Span [] neSpans = nameFinder.find(new String[]{txt});
+                for (Span [] neSpans : findAll(new String[]{txt})) {
                     for (Span span:neSpans){
                         String category = getNEType(span);
                         Annotation annotation =  view.newAnnotation(NE_ID + count++, Uri.NE, 0, txt.length());
-                        annotation.addFeature("word", txt);
+                        if (keepText) {
+                            annotation.addFeature("word", txt);
+                        }
                         annotation.addFeature("category", category);
                     }
                 }
@@ -105,25 +245,32 @@ public class NamedEntityRecognizer extends OpenNLPAbstractWebService {
                         Uri.TOKEN));
             }
         } else {
-            String[] tokens = new String[tokenAnns.size()];
-            for(int i = 0; i < tokens.length; i++ ) {
-                tokens[i] = getTokenText(tokenAnns.get(i), txt);
+            String[] tokens = tokenSpans.getWords();
+            List<int[]> sentences = null;
+            Spans sentSpans = document.latest(Uri.SENTENCE, null);
+            if (sentSpans != null) {
+                sentences = tokenSpans.ranges(sentSpans);
             }
-            for (TokenNameFinder nameFinder : nameFinders) {
-                Span [] namedSpans = nameFinder.find(tokens);
+            if (sentences == null) {
+                sentences = new ArrayList<>();
+                sentences.add(new int[]{0, tokens.length});
+            }
+            for (List<Span> namedSpans : findBySentence(tokens, sentences)) {
                 for (Span span:namedSpans){
-                    // namedSpans will keep all named-entities as (start_tok_id, end_tok_id) pairs
-                    Long start = tokenAnns.get(span.getStart()).getStart();
-                    Long end = tokenAnns.get(span.getEnd()).getEnd();
+                    // namedSpans will keep all named-entities as (start_tok_id, end_tok_id) pairs,
+                    // the end is exclusive.
+                    int start = tokenSpans.getStart(span.getStart());
+                    int end = tokenSpans.getEnd(span.getEnd() - 1);
                     String category = getNEType(span);
                     Annotation ann = view.newAnnotation(NE_ID + count++, Uri.NE, start, end);
-                    ann.addFeature("word", txt.substring(start.intValue(), end.intValue()));
+                    if (keepText) {
+                        ann.addFeature("word", txt.substring(start, end));
+                    }
                     ann.addFeature("category", category);
                 }
             }
         }
-        Data<Container> data = new Data<>(Uri.LIF, container);
-        return Serializer.toJson(data);
+        return view;
     }
 
     private String getNEType(Span span) {
@@ -1,35 +1,35 @@
 package edu.brandeis.cs.lappsgrid.opennlp;
 
+import opennlp.tools.chunker.ChunkerModel;
 import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.parser.ParserModel;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.sentdetect.SentenceModel;
 import opennlp.tools.tokenize.TokenizerModel;
 import opennlp.tools.util.model.BaseModel;
-import org.lappsgrid.api.WebService;
 import org.lappsgrid.discriminator.Discriminators;
+import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
 import org.lappsgrid.serialization.Serializer;
-import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Created by shicq on 3/6/14.
  */
 
-public abstract class OpenNLPAbstractWebService implements WebService {
-    protected static final Properties MODELS = new Properties();
+public abstract class OpenNLPAbstractWebService implements BatchWebService {
+    protected static final Properties CONFIG = new Properties();
     protected static final Logger logger = LoggerFactory.getLogger(OpenNLPAbstractWebService.class);
     public static final String MODEL_PROP_FILENAME = "/models.properties";
+    public static final String CONFIG_PROP_FILENAME = "/service.properties";
 
     public static final String TOKEN_ID = "tok_";
     public static final String POS_ID = "pos_";
@@ -41,16 +41,42 @@ public abstract class OpenNLPAbstractWebService implements WebService {
     public static final String MENTION_ID = "m_";
     public static final String COREF_ID = "coref_";
     public static final String NE_ID = "ne_";
-    // NOTE: models can be static, but the actual NameFinders cannot be static,
-    // because they are not thread safe.
-    static final List<TokenNameFinderModel> nameFinderModels = new LinkedList<>();
-    static SentenceModel sentenceDetectorModel;
-    static POSModel posModel;
-    static ParserModel parserModel;
-    static TokenizerModel tokenizerModel;
+    public static final String CHUNK_ID = "ch_";
+
+    // largest beam a request may ask for, each beam size gets its own annotators
+    public static final int MAX_BEAM_SIZE = 100;
+
+    // output profiles, see getProfile()
+    public static final String PROFILE_FULL = "full";
+    public static final String PROFILE_OFFSETS = "offsets";
+    public static final String PROFILE_MINIMAL = "minimal";
+
+    // NOTE: models are shared through the ModelRegistry, but the actual NameFinders
+    // cannot be shared, because they are not thread safe. Services keep them in an AnnotatorPool.
 
     protected String metadata;
 
+    private static volatile String version;
+    private volatile String producer;
+    private volatile List<String> producedTypes;
+
+    private final ServiceMetrics metrics;
+    private final Admission admission;
+
+    // drops the annotators built on the models the registry swaps or unloads,
+    // they are rebuilt on the next request; kept here since the registry holds
+    // it weakly
+    private final ModelRegistry.Listener modelListener = new ModelRegistry.Listener() {
+        @Override
+        public void modelsChanged(Set<BaseModel> dropped) {
+            if (dropped == null) {
+                unloadAnnotators();
+            } else {
+                unloadAnnotators(dropped);
+            }
+        }
+    };
+
     protected static final Map<Class, String> MODEL_PROP_KEY_MAP = new HashMap<>();
     static {
         MODEL_PROP_KEY_MAP.put(Tokenizer.class, "Tokenizer");
@@ -59,6 +85,7 @@ public abstract class OpenNLPAbstractWebService implements WebService {
         MODEL_PROP_KEY_MAP.put(Parser.class, "Parser");
 //        MODEL_PROP_KEY_MAP.put(Coreference.class, "Coreference");
         MODEL_PROP_KEY_MAP.put(POSTagger.class, "Part-of-Speech-Tagger");
+        MODEL_PROP_KEY_MAP.put(Chunker.class, "Chunker");
     }
 
     protected static final Map<Class, String> DEFAULT_MODEL_RES_FILE_MAP = new HashMap<>();
@@ -69,11 +96,24 @@ public abstract class OpenNLPAbstractWebService implements WebService {
         DEFAULT_MODEL_RES_FILE_MAP.put(Parser.class, "/en-parser-chunking.bin");
 //        DEFAULT_MODEL_RES_FILE_MAP.put(Coreference.class, "/coref");
         DEFAULT_MODEL_RES_FILE_MAP.put(POSTagger.class, "/en-pos-maxent.bin");
+        DEFAULT_MODEL_RES_FILE_MAP.put(Chunker.class, "/en-chunker.bin");
     }
 
+    /**
+     * Version of the services, read once from version.properties.
+     */
     public String getVersion() {
+        String v = version;
+        if (v == null) {
+            v = readVersion();
+            version = v;
+        }
+        return v;
+    }
+
+    static String readVersion() {
         String path = "/version.properties";
-        InputStream stream = getClass().getResourceAsStream(path);
+        InputStream stream = OpenNLPAbstractWebService.class.getResourceAsStream(path);
         if (stream == null) {
             logger.error("version.properties file not found, version is UNKNOWN.");
             return "UNKNOWN";
@@ -89,139 +129,238 @@ public abstract class OpenNLPAbstractWebService implements WebService {
         }
     }
 
-    private void loadModelPaths() throws OpenNLPWebServiceException {
-        if (MODELS.size() == 0) {
-            logger.info("Finding paths of pre-trained models.");
-            InputStream stream = this.getClass().getResourceAsStream(MODEL_PROP_FILENAME);
-            if (stream == null) {
-                logger.error("Fail to open \"" + MODEL_PROP_FILENAME + "\".");
-                throw new OpenNLPWebServiceException("fail to open \"" + MODEL_PROP_FILENAME + "\".");
+    /**
+     * The producer recorded in the "contains" metadata of the views,
+     * "&lt;class name&gt;:&lt;version&gt;".
+     */
+    protected String getProducer() {
+        String p = producer;
+        if (p == null) {
+            p = String.format("%s:%s", this.getClass().getName(), getVersion());
+            producer = p;
+        }
+        return p;
+    }
+
+    private static volatile boolean configLoaded = false;
+
+    /**
+     * Reads {@value #CONFIG_PROP_FILENAME} once, on the first setting looked
+     * up, so that the settings read before any service exists (the model
+     * registry at startup, the workers) see it too.
+     */
+    static void loadConfig() {
+        if (configLoaded) {
+            return;
+        }
+        synchronized (CONFIG) {
+            if (configLoaded) {
+                return;
             }
-            try {
-                logger.info("loading " + MODEL_PROP_FILENAME);
-                MODELS.load(stream);
-                stream.close();
-            } catch (IOException e) {
-                logger.error("Fail to load \"" + MODEL_PROP_FILENAME + "\".");
-                throw new OpenNLPWebServiceException("fail to load \"" + MODEL_PROP_FILENAME + "\".");
+            InputStream stream = OpenNLPAbstractWebService.class.getResourceAsStream(CONFIG_PROP_FILENAME);
+            if (stream == null) {
+                logger.info("No \"" + CONFIG_PROP_FILENAME + "\" found, using default settings.");
+            } else {
+                try {
+                    logger.info("loading " + CONFIG_PROP_FILENAME);
+                    CONFIG.load(stream);
+                    stream.close();
+                } catch (IOException e) {
+                    logger.error("Fail to load \"" + CONFIG_PROP_FILENAME + "\", using default settings.");
+                }
             }
-        } else {
-            logger.info("Found cache of the paths of pre-trained models, contains " + MODELS.size() + " items.");
+            configLoaded = true;
         }
     }
 
-    protected OpenNLPAbstractWebService() throws OpenNLPWebServiceException {
-        this.loadModelPaths();
+    /**
+     * Forgets the settings read, the next lookup reads them again.
+     */
+    static void resetConfig() {
+        synchronized (CONFIG) {
+            CONFIG.clear();
+            configLoaded = false;
+        }
     }
 
-    protected abstract void loadAnnotators() throws OpenNLPWebServiceException;
-
-    protected OpenNLPWebServiceException modelFails(String modelName, String modelResName, Throwable e) {
-        String error = String.format("Failed to open %s MODEL \"%s\".", modelName, modelResName);
-        logger.error(error);
-        logger.error(e.toString());
-        return new OpenNLPWebServiceException(error);
+    /**
+     * Looks up a service setting, system properties first and then
+     * {@value #CONFIG_PROP_FILENAME}.
+     */
+    protected static String getConfig(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            loadConfig();
+            value = CONFIG.getProperty(key);
+        }
+        return value == null || value.trim().length() == 0 ? defaultValue : value.trim();
     }
 
-    void loadSentenceModel() throws OpenNLPWebServiceException {
-        if (sentenceDetectorModel == null) {
-            String sentenceModelResPath = MODELS.getProperty(
-                    MODEL_PROP_KEY_MAP.get(Splitter.class),
-                    DEFAULT_MODEL_RES_FILE_MAP.get(Splitter.class));
-            sentenceDetectorModel =(SentenceModel) loadBinaryModel(
-                    "SENTENCE", sentenceModelResPath, SentenceModel.class);
+    protected static int getConfig(String key, int defaultValue) {
+        String value = getConfig(key, (String) null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            logger.warn(String.format("Invalid number for %s: \"%s\", using %d.", key, value, defaultValue));
+            return defaultValue;
         }
     }
 
-    void loadPOSModel() throws OpenNLPWebServiceException {
-        if (posModel == null) {
-            String posModelResPath = MODELS.getProperty(
-                    MODEL_PROP_KEY_MAP.get(POSTagger.class),
-                    DEFAULT_MODEL_RES_FILE_MAP.get(POSTagger.class));
-            posModel = (POSModel) loadBinaryModel(
-                    "POSTAGGER", posModelResPath, POSModel.class);
-        }
+    /**
+     * Number of annotator instances a service may run at the same time,
+     * "&lt;Service&gt;.pool-size" and defaults to the number of processors.
+     */
+    protected int getPoolSize() {
+        int size = getConfig(getClass().getSimpleName() + ".pool-size", 0);
+        return size > 0 ? size : Runtime.getRuntime().availableProcessors();
     }
 
-    void loadParserModel() throws OpenNLPWebServiceException {
-        if (parserModel == null) {
-            String syntacticModelResPath = MODELS.getProperty(
-                    MODEL_PROP_KEY_MAP.get(Parser.class),
-                    DEFAULT_MODEL_RES_FILE_MAP.get(Parser.class));
-            parserModel = (ParserModel) loadBinaryModel(
-                    "PARSER", syntacticModelResPath, ParserModel.class);
-        }
+    protected OpenNLPAbstractWebService() throws OpenNLPWebServiceException {
+        this.metrics = ServiceMetrics.forService(getClass().getSimpleName());
+        this.admission = new Admission(
+                getConfig(getClass().getSimpleName() + ".max-concurrent", getConfig("admission.max-concurrent", 0)),
+                getConfig(getClass().getSimpleName() + ".max-queued", getConfig("admission.max-queued", 0)),
+                getConfig("admission.queue-timeout", 30000));
+        ModelRegistry.getInstance().loadModelPaths();
+        ModelRegistry.getInstance().addListener(modelListener);
+        ModelRegistry.getInstance().startMonitor();
     }
 
-    void loadTokenizerModel() throws OpenNLPWebServiceException {
-        if (tokenizerModel == null) {
-            String tokenModelResPath = MODELS.getProperty(
-                    MODEL_PROP_KEY_MAP.get(Tokenizer.class),
-                    DEFAULT_MODEL_RES_FILE_MAP.get(Tokenizer.class));
-            tokenizerModel = (TokenizerModel) loadBinaryModel(
-                    "TOKEN", tokenModelResPath, TokenizerModel.class);
-        }
+    protected abstract void loadAnnotators() throws OpenNLPWebServiceException;
+
+    /**
+     * Drops the annotators, the next request loads them again from the
+     * current models.
+     */
+    protected abstract void unloadAnnotators();
+
+    /**
+     * Drops the annotators built on the given models, all of them unless
+     * the service tells its pools apart.
+     */
+    protected void unloadAnnotators(Set<BaseModel> dropped) {
+        unloadAnnotators();
     }
 
-    void loadNameFinderModels() throws OpenNLPWebServiceException {
-        if (nameFinderModels.size() == 0) {
-            String[] neModelsResPaths = MODELS.getProperty(
-                    MODEL_PROP_KEY_MAP.get(NamedEntityRecognizer.class),
-                    DEFAULT_MODEL_RES_FILE_MAP.get(NamedEntityRecognizer.class)).split(":");
-            Arrays.toString(neModelsResPaths);
-            for (String neModelResPath : neModelsResPaths) {
-                if (neModelResPath.trim().length() > 0) {
-                    nameFinderModels.add((TokenNameFinderModel) loadBinaryModel(
-                            "NER", neModelResPath, TokenNameFinderModel.class));
+    /**
+     * Removes the pools built on the given models from a map of pools.
+     *
+     * @return true when a pool was removed
+     */
+    protected static <T> boolean unloadPools(Map<String, AnnotatorPool<T>> pools, Set<BaseModel> dropped) {
+        boolean removed = false;
+        synchronized (pools) {
+            Iterator<AnnotatorPool<T>> iterator = pools.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isBuiltOn(dropped)) {
+                    iterator.remove();
+                    removed = true;
                 }
             }
         }
+        return removed;
     }
 
-    BaseModel loadBinaryModel(String modelName, String modelResPath, Class modelClass) throws OpenNLPWebServiceException {
-        this.loadModelPaths();
+    protected <T extends BaseModel> T loadModel(String modelName, Class service, Class<T> modelClass)
+            throws OpenNLPWebServiceException {
+        return loadModel(modelName, MODEL_PROP_KEY_MAP.get(service), DEFAULT_MODEL_RES_FILE_MAP.get(service),
+                modelClass);
+    }
 
-        logger.info(String.format("Opening a binary model for %s: %s", modelName, modelResPath));
-        InputStream stream = this.getClass().getResourceAsStream(modelResPath);
-        if (stream == null) {
-            throw modelFails(modelName, modelResPath, new FileNotFoundException());
+    protected <T extends BaseModel> T loadModel(String modelName, String key, String defaultPath,
+                                                Class<T> modelClass) throws OpenNLPWebServiceException {
+        List<String> paths = ModelRegistry.getInstance().getPaths(key, defaultPath);
+        if (paths.size() == 0) {
+            throw new OpenNLPWebServiceException(String.format("No %s MODEL configured.", modelName));
         }
+        return ModelRegistry.getInstance().getModel(modelName, paths.get(0), modelClass);
+    }
 
-        logger.info(String.format("Loading the model for %s: %s", modelName, modelResPath));
+    SentenceModel loadSentenceModel() throws OpenNLPWebServiceException {
+        return loadModel("SENTENCE", Splitter.class, SentenceModel.class);
+    }
 
-        try {
-            try {
-                Constructor<? extends BaseModel> constructor = modelClass.getConstructor(InputStream.class);
-                return constructor.newInstance(stream);
-            } catch (IllegalAccessException | InstantiationException e) {
-                e.printStackTrace();
-                throw modelFails(modelName, modelResPath, e);
-            } catch (NoSuchMethodException | InvocationTargetException e) {
-                e.printStackTrace();
-            } finally {
-                stream.close();
-            }
-        } catch (IOException e) {
-            throw modelFails(modelName, modelResPath, e);
+    POSModel loadPOSModel() throws OpenNLPWebServiceException {
+        return loadModel("POSTAGGER", POSTagger.class, POSModel.class);
+    }
+
+    POSModel loadPerceptronPOSModel() throws OpenNLPWebServiceException {
+        return loadModel("POSTAGGER", "POS-Tagger", "/en-pos-perceptron.bin", POSModel.class);
+    }
+
+    ParserModel loadParserModel() throws OpenNLPWebServiceException {
+        return loadModel("PARSER", Parser.class, ParserModel.class);
+    }
+
+    ChunkerModel loadChunkerModel() throws OpenNLPWebServiceException {
+        return loadModel("CHUNKER", Chunker.class, ChunkerModel.class);
+    }
+
+    TokenizerModel loadTokenizerModel() throws OpenNLPWebServiceException {
+        return loadModel("TOKEN", Tokenizer.class, TokenizerModel.class);
+    }
+
+    List<TokenNameFinderModel> loadNameFinderModels() throws OpenNLPWebServiceException {
+        List<TokenNameFinderModel> nameFinderModels = new ArrayList<>();
+        for (String neModelResPath : ModelRegistry.getInstance().getPaths(
+                MODEL_PROP_KEY_MAP.get(NamedEntityRecognizer.class),
+                DEFAULT_MODEL_RES_FILE_MAP.get(NamedEntityRecognizer.class))) {
+            nameFinderModels.add(ModelRegistry.getInstance().getModel(
+                    "NER", neModelResPath, TokenNameFinderModel.class));
         }
-        return null;
+        return nameFinderModels;
     }
 
+    /**
+     * Executes the input once the {@link Admission} of the service lets it in,
+     * or returns an ERROR at once when the service is full.
+     */
     @Override
     public String execute(String input) {
 
         if (input == null) return null;
 
-        input = input.trim();
+        if (!admission.acquire()) {
+            metrics.rejected();
+            String message = String.format(
+                    "Service busy: %s runs %d requests and queues %d, try again later.",
+                    getClass().getSimpleName(), admission.getMaxConcurrent(), admission.getMaxQueued());
+            return new Data<>(Discriminators.Uri.ERROR, message).asJson();
+        }
+        try {
+            return executeAdmitted(input);
+        } finally {
+            admission.release();
+        }
+    }
+
+    private String executeAdmitted(String input) {
+        long start = System.nanoTime();
         // in case of Json
         Data data;
-        if(input.startsWith("{") && input.endsWith("}")) {
-            data = Serializer.parse(input, Data.class);
+        LifReader reader = null;
+        if (isJsonObject(input)) {
+            if (Boolean.parseBoolean(getConfig("lif.lazy-parsing", "true"))) {
+                try {
+                    reader = LifReader.scan(input);
+                } catch (IOException e) {
+                    logger.warn("Cannot scan the input, parsing it completely: " + e.toString());
+                }
+            }
+            if (reader != null) {
+                data = new Data<>(reader.getDiscriminator(), reader.getPayload());
+                data.setParameters(reader.getParameters());
+            } else {
+                data = Serializer.parse(input, Data.class);
+            }
         } else {
             // when json parse failed
             data = new Data();
             data.setDiscriminator(Discriminators.Uri.TEXT);
-            data.setPayload(input);
+            data.setPayload(input.trim());
         }
 
         final String discriminator = data.getDiscriminator();
@@ -229,10 +368,22 @@ public abstract class OpenNLPAbstractWebService implements WebService {
 
         switch (discriminator) {
             case Discriminators.Uri.ERROR:
-                return input;
+                return input.trim();
             case Discriminators.Uri.JSON_LD:
             case Discriminators.Uri.LIF:
-                container = new Container((Map) data.getPayload());
+                container = null;
+                if (reader != null) {
+                    try {
+                        container = reader.getContainer(getRequiredTypes(parameters(data)));
+                    } catch (IOException e) {
+                        logger.warn("Cannot read the views lazily, parsing the input completely: " + e.toString());
+                        reader = null;
+                    }
+                }
+                if (container == null) {
+                    data = Serializer.parse(input, Data.class);
+                    container = new Container((Map) data.getPayload());
+                }
                 break;
             case Discriminators.Uri.TEXT:
                 container = new Container();
@@ -240,16 +391,47 @@ public abstract class OpenNLPAbstractWebService implements WebService {
                 container.setLanguage("en");
                 break;
             default:
+                metrics.error();
                 String message = String.format
                         ("Unsupported discriminator type: %s", discriminator);
                 return new Data<>(Discriminators.Uri.ERROR, message).asJson();
         }
+        metrics.request(container.getText());
+        metrics.parse.record(System.nanoTime() - start);
 
         try {
             // TODO: 12/4/2016 this will be redundant when @context stuff sorted out
             container.setContext(Container.REMOTE_CONTEXT);
-            return execute(container);
+            LifWriter.Stream stream = stream(container, parameters(data));
+            if (stream != null) {
+                return executeStreamed(input, discriminator, container, stream);
+            }
+            List<View> newViews = annotateCached(container, parameters(data));
+            start = System.nanoTime();
+            String output = null;
+            if (!discriminator.equals(Discriminators.Uri.TEXT)) {
+                try {
+                    output = LifWriter.append(input, newViews);
+                } catch (IOException e) {
+                    logger.warn("Cannot stream the LIF output, serializing the container: " + e.toString());
+                }
+                if (output == null && reader != null) {
+                    // the container only holds the views the service read
+                    Container full = new Container((Map) Serializer.parse(input, Data.class).getPayload());
+                    full.setContext(Container.REMOTE_CONTEXT);
+                    for (View view : newViews) {
+                        full.addView(view);
+                    }
+                    container = full;
+                }
+            }
+            if (output == null) {
+                output = Serializer.toJson(new Data<>(Discriminators.Uri.LIF, container));
+            }
+            metrics.serialize.record(System.nanoTime() - start);
+            return output;
         } catch (Throwable th) {
+            metrics.error();
             th.printStackTrace();
             String message =
                     String.format("Error processing input: %s", th.toString());
@@ -257,20 +439,302 @@ public abstract class OpenNLPAbstractWebService implements WebService {
         }
     }
 
+    /**
+     * Writes the view of a large document as it is produced, past the cache:
+     * the annotate and serialize times are one and recorded as annotate.
+     */
+    private String executeStreamed(String input, String discriminator, Container container,
+                                   LifWriter.Stream stream) throws IOException {
+        long start = System.nanoTime();
+        String lif = discriminator.equals(Discriminators.Uri.TEXT)
+                ? Serializer.toJson(new Data<>(Discriminators.Uri.LIF, container)) : input;
+        final int[] count = new int[1];
+        String output = LifWriter.append(lif, Collections.<View>emptyList(), counting(stream, count));
+        metrics.annotate.record(System.nanoTime() - start);
+        metrics.streamed(stream.getView(), count[0]);
+        return output;
+    }
+
+    private static LifWriter.Stream counting(final LifWriter.Stream stream, final int[] count) {
+        return new LifWriter.Stream() {
+            @Override
+            public View getView() {
+                return stream.getView();
+            }
+
+            @Override
+            public int write(LifWriter writer) throws IOException {
+                count[0] = stream.write(writer);
+                return count[0];
+            }
+        };
+    }
+
+    /**
+     * Executes the documents on the shared {@link Workers} pool, each one as
+     * {@link #execute(String)}. A document that fails gets an ERROR result.
+     */
+    @Override
+    public String[] executeBatch(String[] inputs) {
+        if (inputs == null) return null;
+
+        List<Callable<String>> tasks = new ArrayList<>(inputs.length);
+        for (final String input : inputs) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() {
+                    try {
+                        return execute(input);
+                    } catch (Throwable th) {
+                        String message =
+                                String.format("Error processing input: %s", th.toString());
+                        return new Data<>(Discriminators.Uri.ERROR, message).asJson();
+                    }
+                }
+            });
+        }
+        List<String> results = Workers.invokeAll(tasks);
+        return results.toArray(new String[results.size()]);
+    }
+
+    private static boolean isJsonObject(String input) {
+        int first = 0;
+        int last = input.length() - 1;
+        while (first <= last && Character.isWhitespace(input.charAt(first))) {
+            first++;
+        }
+        while (last > first && Character.isWhitespace(input.charAt(last))) {
+            last--;
+        }
+        return first < last && input.charAt(first) == '{' && input.charAt(last) == '}';
+    }
+
+    /**
+     * Annotation types of the upstream views the service reads, only the
+     * latest view of each is parsed from a LIF input. Null, the default,
+     * parses all the views.
+     */
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        return null;
+    }
+
+    /**
+     * Annotation types of the views the service adds, as its metadata
+     * declares them.
+     */
+    protected List<String> getProducedTypes() {
+        List<String> types = producedTypes;
+        if (types == null) {
+            Data data = Serializer.parse(getMetadata(), Data.class);
+            ServiceMetadata meta = new ServiceMetadata((Map) data.getPayload());
+            types = meta.getProduces().getAnnotations();
+            producedTypes = types;
+        }
+        return types;
+    }
+
     @Override
     public String getMetadata() {
         return metadata;
     }
 
-    protected String getTokenText(Annotation token, String fullText) {
-        String tokenText;
-        if (token.getFeatures().containsKey("word")) {
-            tokenText = token.getFeature("word");
-        } else {
-            tokenText = fullText.substring(token.getStart().intValue(),  token.getEnd().intValue());
+    public String execute(Container in) throws OpenNLPWebServiceException {
+        return execute(in, null);
+    }
+
+    /**
+     * Executes with the per-request parameters carried by the input {@link Data}.
+     */
+    public String execute(Container in, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        metrics.request(in.getText());
+        try {
+            annotateCached(in, parameters);
+        } catch (OpenNLPWebServiceException | RuntimeException e) {
+            metrics.error();
+            throw e;
+        }
+        long start = System.nanoTime();
+        String output = Serializer.toJson(new Data<>(Discriminators.Uri.LIF, in));
+        metrics.serialize.record(System.nanoTime() - start);
+        return output;
+    }
+
+    /**
+     * Annotates through the {@link ResultCache}, when enabled, and returns the
+     * views added to the container.
+     */
+    protected List<View> annotateCached(Container in, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        long start = System.nanoTime();
+        ResultCache cache = ResultCache.getInstance();
+        String key = null;
+        if (cache.isEnabled()) {
+            key = cache.key(getProducer(), parameters, in, getRequiredTypes(parameters));
+            List<View> views = cache.get(key);
+            if (views != null) {
+                for (View view : views) {
+                    in.addView(view);
+                }
+                annotated(in, parameters, views, start);
+                return views;
+            }
+        }
+        int before = in.getViews().size();
+        annotate(in, parameters);
+        List<View> views = new ArrayList<>(in.getViews().subList(before, in.getViews().size()));
+        if (key != null && isCacheable(views)) {
+            cache.put(key, views);
+        }
+        annotated(in, parameters, views, start);
+        return views;
+    }
+
+    /**
+     * Whether the views may be answered again from the {@link ResultCache},
+     * false for results that depend on more than the input, e.g. cut short
+     * by a deadline.
+     */
+    protected boolean isCacheable(List<View> views) {
+        return true;
+    }
+
+    private void annotated(Container in, Map<String, ?> parameters, List<View> views, long start) {
+        metrics.annotate.record(System.nanoTime() - start);
+        metrics.annotated(in, getRequiredTypes(parameters), views);
+    }
+
+    /**
+     * Timers and counters of the service, also registered with JMX.
+     */
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * The view of the service as a {@link LifWriter.Stream}, for documents
+     * too large to hold one annotation per span in memory, or null to
+     * annotate the container. Only {@link #execute(String)} streams, and
+     * null is the default.
+     */
+    protected LifWriter.Stream stream(Container in, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return null;
+    }
+
+    /**
+     * Adds the view of the service to the container and returns it.
+     */
+    protected abstract View annotate(Container in) throws OpenNLPWebServiceException;
+
+    /**
+     * Annotates with per-request parameters. Services that support options
+     * override this, the others ignore them.
+     */
+    protected View annotate(Container in, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(in);
+    }
+
+    /**
+     * Annotates the container of the document, reading the upstream views
+     * through its {@link Spans}. Services that read or produce tokens and
+     * sentences override this, so the stages of a {@link Pipeline} share the
+     * spans; the others annotate the container.
+     */
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(document.getContainer(), parameters);
+    }
+
+    /**
+     * The per-request parameters of the input, keyed by name.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> parameters(Data<?> data) {
+        return (Map<String, ?>) data.getParameters();
+    }
+
+    /**
+     * Looks up an option, first in the per-request parameters and then in the
+     * service settings as "&lt;Service&gt;.&lt;name&gt;".
+     */
+    protected String getOption(Map<String, ?> parameters, String name, String defaultValue) {
+        if (parameters != null && parameters.get(name) != null) {
+            return parameters.get(name).toString().trim();
         }
-        return tokenText;
+        return getConfig(getClass().getSimpleName() + "." + name, defaultValue);
+    }
+
+    protected boolean getOption(Map<String, ?> parameters, String name, boolean defaultValue) {
+        return Boolean.parseBoolean(getOption(parameters, name, String.valueOf(defaultValue)));
     }
 
-    public abstract String execute(Container in) throws OpenNLPWebServiceException;
+    protected long getOption(Map<String, ?> parameters, String name, long defaultValue) {
+        String value = getOption(parameters, name, String.valueOf(defaultValue));
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn(String.format("Invalid number for %s: \"%s\", using %d.", name, value, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    protected double getOption(Map<String, ?> parameters, String name, double defaultValue) {
+        String value = getOption(parameters, name, String.valueOf(defaultValue));
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            logger.warn(String.format("Invalid number for %s: \"%s\", using %s.", name, value, defaultValue));
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The output profile of a request, the "profile" option or else
+     * output.profile: "full" writes every feature, "offsets" drops the text
+     * features a client can cut from the text by the offsets ("word",
+     * "sentence"), and "minimal" also drops the features derived from other
+     * annotations (the Penn tree of the constituents).
+     */
+    protected String getProfile(Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        String profile = getOption(parameters, "profile", getConfig("output.profile", PROFILE_FULL)).toLowerCase();
+        if (!PROFILE_FULL.equals(profile) && !PROFILE_OFFSETS.equals(profile) && !PROFILE_MINIMAL.equals(profile)) {
+            throw new OpenNLPWebServiceException(String.format(
+                    "Unknown output profile: %s, expecting %s, %s or %s",
+                    profile, PROFILE_FULL, PROFILE_OFFSETS, PROFILE_MINIMAL));
+        }
+        return profile;
+    }
+
+    /**
+     * A map of the annotator pools of the settings (model, beam size, ...)
+     * the requests asked for, keeping the "&lt;Service&gt;.max-pools" most
+     * recently used: every pool holds up to pool-size annotators, so the
+     * settings of the requests must not add pools without bound.
+     */
+    protected <T> Map<String, AnnotatorPool<T>> newPoolMap() {
+        final int maxPools = Math.max(1, getConfig(getClass().getSimpleName() + ".max-pools", 4));
+        return Collections.synchronizedMap(new LinkedHashMap<String, AnnotatorPool<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AnnotatorPool<T>> eldest) {
+                return size() > maxPools;
+            }
+        });
+    }
+
+    /**
+     * The beam size of a request: 1 with the "greedy" option, otherwise the
+     * "beam-size" option, between 1 and {@link #MAX_BEAM_SIZE}.
+     */
+    protected int getBeamSize(Map<String, ?> parameters, int defaultValue) throws OpenNLPWebServiceException {
+        if (getOption(parameters, "greedy", false)) {
+            return 1;
+        }
+        long beamSize = getOption(parameters, "beam-size", (long) defaultValue);
+        if (beamSize < 1 || beamSize > MAX_BEAM_SIZE) {
+            throw new OpenNLPWebServiceException(String.format(
+                    "Wrong beam-size: %d, expecting 1 to %d", beamSize, MAX_BEAM_SIZE));
+        }
+        return (int) beamSize;
+    }
 }
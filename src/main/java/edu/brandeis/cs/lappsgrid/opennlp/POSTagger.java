@@ -3,17 +3,24 @@ package edu.brandeis.cs.lappsgrid.opennlp;
 import opennlp.tools.postag.POSModel;
 import opennlp.tools.postag.POSTaggerME;
 import opennlp.tools.util.Sequence;
+import opennlp.tools.util.model.BaseModel;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
 import org.lappsgrid.vocabulary.Features;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * <i>POSTagger.java</i> Language Application Grids (<b>LAPPS</b>)
@@ -26,8 +33,15 @@ import java.util.List;
  */
 public class POSTagger extends OpenNLPAbstractWebService {
 
-    private opennlp.tools.postag.POSTagger postagger;
+    /**
+     * The tagging models, chosen with the "model" parameter or POSTagger.model.
+     */
+    public static final String MAXENT = "maxent";
+    public static final String PERCEPTRON = "perceptron";
 
+    // annotator pools by model and beam size, created on first use,
+    // the POSTagger.max-pools most recently used are kept
+    private final Map<String, AnnotatorPool<opennlp.tools.postag.POSTagger>> postaggers = newPoolMap();
 
     public POSTagger() throws OpenNLPWebServiceException {
         loadAnnotators();
@@ -36,60 +50,192 @@ public class POSTagger extends OpenNLPAbstractWebService {
 
     @Override
     synchronized protected void loadAnnotators() throws OpenNLPWebServiceException {
-        super.loadPOSModel();
-        postagger = new POSTaggerME(posModel);
+        loadAnnotators(MAXENT, getBeamSize(null, POSTaggerME.DEFAULT_BEAM_SIZE));
     }
 
-    public String[] tag(String[] sentence) {
-        if (postagger == null) {
+    synchronized protected AnnotatorPool<opennlp.tools.postag.POSTagger> loadAnnotators(
+            String model, final int beamSize) throws OpenNLPWebServiceException {
+        String key = model.toLowerCase() + ":" + beamSize;
+        AnnotatorPool<opennlp.tools.postag.POSTagger> pool = postaggers.get(key);
+        if (pool == null) {
+            final POSModel posModel = PERCEPTRON.equalsIgnoreCase(model)
+                    ? super.loadPerceptronPOSModel() : super.loadPOSModel();
+            pool = new AnnotatorPool<>(getPoolSize(), posModel,
+                    new AnnotatorPool.Factory<opennlp.tools.postag.POSTagger>() {
+                        @Override
+                        public opennlp.tools.postag.POSTagger create() {
+                            return new POSTaggerME(posModel, beamSize, 0);
+                        }
+                    });
+            postaggers.put(key, pool);
+        }
+        return pool;
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators() {
+        postaggers.clear();
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators(Set<BaseModel> dropped) {
+        unloadPools(postaggers, dropped);
+    }
+
+    private AnnotatorPool<opennlp.tools.postag.POSTagger> postaggers(String model, int beamSize) {
+        AnnotatorPool<opennlp.tools.postag.POSTagger> pool = postaggers.get(model.toLowerCase() + ":" + beamSize);
+        if (pool == null) {
             try {
-                loadAnnotators();
+                pool = loadAnnotators(model, beamSize);
             } catch (OpenNLPWebServiceException e) {
                 throw new RuntimeException("Fail to initialize POSTagger", e);
             }
         }
-        String tags[] = postagger.tag(sentence);
-        return tags;
+        return pool;
+    }
+
+    /**
+     * The configured beam size, POSTagger.beam-size or 1 with POSTagger.greedy.
+     */
+    private int beamSize() {
+        try {
+            return getBeamSize(null, POSTaggerME.DEFAULT_BEAM_SIZE);
+        } catch (OpenNLPWebServiceException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The model of a request, "maxent" or "perceptron".
+     */
+    protected String getModel(Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        String model = getOption(parameters, "model", MAXENT);
+        if (!MAXENT.equalsIgnoreCase(model) && !PERCEPTRON.equalsIgnoreCase(model)) {
+            throw new OpenNLPWebServiceException(String.format(
+                    "Unknown POS model: %s, expecting %s or %s", model, MAXENT, PERCEPTRON));
+        }
+        return model;
+    }
+
+    public String[] tag(String[] sentence) {
+        return tag(sentence, MAXENT);
+    }
+
+    public String[] tag(String[] sentence, String model) {
+        return tag(sentence, model, beamSize());
+    }
+
+    /**
+     * Tags a sentence keeping the beamSize best sequences, 1 is greedy.
+     */
+    public String[] tag(String[] sentence, String model, int beamSize) {
+        AnnotatorPool<opennlp.tools.postag.POSTagger> pool = postaggers(model, beamSize);
+        opennlp.tools.postag.POSTagger postagger = pool.borrow();
+        try {
+            String tags[] = postagger.tag(sentence);
+            return tags;
+        } finally {
+            pool.release(postagger);
+        }
     }
 
 
     public Sequence[] topKSequences(String[] sentence) {
-        if (postagger == null) {
-            try {
-                loadAnnotators();
-            } catch (OpenNLPWebServiceException e) {
-                throw new RuntimeException("Fail to initialize POSTagger", e);
-            }
+        AnnotatorPool<opennlp.tools.postag.POSTagger> pool = postaggers(MAXENT, beamSize());
+        opennlp.tools.postag.POSTagger postagger = pool.borrow();
+        try {
+            Sequence tags[] = postagger.topKSequences(sentence);
+            return tags;
+        } finally {
+            pool.release(postagger);
+        }
+    }
+
+    /**
+     * Tags each sentence of the latest sentence view as its own sequence, in
+     * parallel. Tokens outside any sentence are tagged as runs of their own.
+     * Without a sentence view the whole document is tagged as one sequence.
+     */
+    protected String[] tagBySentence(Document document, Spans tokenSpans,
+                                     final String model, final int beamSize)
+            throws OpenNLPWebServiceException {
+        String[] tokens = tokenSpans.getWords();
+        Spans sentences = document.latest(Uri.SENTENCE, null);
+        if (sentences == null) {
+            return tag(tokens, model, beamSize);
+        }
+        List<int[]> ranges = tokenSpans.ranges(sentences);
+        if (ranges == null) {
+            return tag(tokens, model, beamSize);
+        }
+
+        List<Callable<String[]>> tasks = new ArrayList<>(ranges.size());
+        for (final int[] range : ranges) {
+            final String[] sentence = Arrays.copyOfRange(tokens, range[0], range[1]);
+            tasks.add(new Callable<String[]>() {
+                @Override
+                public String[] call() {
+                    return tag(sentence, model, beamSize);
+                }
+            });
+        }
+        List<String[]> results = Workers.invokeAll(tasks);
+
+        String[] tags = new String[tokens.length];
+        for (int i = 0; i < ranges.size(); i++) {
+            String[] sentTags = results.get(i);
+            System.arraycopy(sentTags, 0, tags, ranges.get(i)[0], sentTags.length);
         }
-        Sequence tags[] = postagger.topKSequences(sentence);
         return tags;
     }
 
     @Override
-    public String execute(Container container) throws OpenNLPWebServiceException {
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        if (getOption(parameters, "sentence-scoped", false)) {
+            return Arrays.asList(Uri.TOKEN, Uri.SENTENCE);
+        }
+        return Collections.singletonList(Uri.TOKEN);
+    }
+
+    @Override
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container), parameters);
+    }
+
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
         logger.info("Executing");
-        String txt = container.getText();
+        String txt = document.getText();
 
-        List<View> tokenViews = container.findViewsThatContain(Uri.TOKEN);
-        if (tokenViews.size() == 0) {
+        Spans tokenSpans = document.latest(Uri.TOKEN, null);
+        if (tokenSpans == null) {
             throw new OpenNLPWebServiceException(String.format(
                     "Wrong Input: CANNOT find %s within previous annotations",
                     Uri.TOKEN));
         }
-        List<Annotation> tokenAnns = tokenViews.get(tokenViews.size() - 1).getAnnotations();
 
-        View view = container.newView();
+        String model = getModel(parameters);
+        int beamSize = getBeamSize(parameters, POSTaggerME.DEFAULT_BEAM_SIZE);
+        View view = document.getContainer().newView();
         view.addContains(Uri.POS,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
+                getProducer(),
                 "tagger:opennlp");
+        // the default maxent model is not recorded
+        if (!MAXENT.equalsIgnoreCase(model)) {
+            view.addMetaData("model", model.toLowerCase());
+        }
 
-        int count = 0;
-        if (tokenAnns == null || tokenAnns.size() == 0) {
+        if (tokenSpans.size() == 0) {
             // is word.
             if (txt.matches("[a-zA-Z]+")) {
-                String [] tags = tag(new String []{txt});
+                String [] tags = tag(new String []{txt}, model, beamSize);
                 for(int i = 0; i < tags.length; i++) {
-                    Annotation ann = view.newAnnotation(POS_ID + count++,
+                    Annotation ann = view.newAnnotation(POS_ID + i,
                             Uri.POS, 0, txt.length());
                     ann.addFeature(Features.Token.POS, tags[i]);
                 }
@@ -99,19 +245,24 @@ public class POSTagger extends OpenNLPAbstractWebService {
                         Uri.TOKEN));
             }
         } else {
-            String [] tokens = new String [tokenAnns.size()];
-            for (int i = 0; i < tokenAnns.size(); i ++) {
-                tokens[i] = getTokenText(tokenAnns.get(i), txt);
-            }
-            String [] tags = tag(tokens);
+            String [] tags = getOption(parameters, "sentence-scoped", false)
+                    ? tagBySentence(document, tokenSpans, model, beamSize)
+                    : tag(tokenSpans.getWords(), model, beamSize);
+            String[] ids = document.keepsSpans() ? new String[tags.length] : null;
             for(int i = 0; i < tags.length; i++) {
-                Annotation ann =  view.newAnnotation(POS_ID + count++, Uri.POS,
-                        tokenAnns.get(i).getStart(), tokenAnns.get(i).getEnd());
+                String id = POS_ID + i;
+                Annotation ann =  view.newAnnotation(id, Uri.POS,
+                        tokenSpans.getStart(i), tokenSpans.getEnd(i));
                 ann.addFeature(Features.Token.POS, tags[i]);
+                if (ids != null) {
+                    ids[i] = id;
+                }
+            }
+            if (ids != null) {
+                document.put(view, tokenSpans.annotate(ids, Features.Token.POS, tags));
             }
         }
-        Data<Container> data = new Data<>(Uri.LIF, container);
-        return Serializer.toJson(data);
+        return view;
     }
     
     public String loadMetadata() {
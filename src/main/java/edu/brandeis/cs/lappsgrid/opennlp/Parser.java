@@ -5,11 +5,12 @@ import opennlp.tools.parser.AbstractBottomUpParser;
 import opennlp.tools.parser.Parse;
 import opennlp.tools.parser.ParserFactory;
 import opennlp.tools.parser.ParserModel;
+import opennlp.tools.parser.ParserType;
+import opennlp.tools.util.model.BaseModel;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
@@ -17,8 +18,16 @@ import org.lappsgrid.vocabulary.Features;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
 
 /**
  * <i>Parser.java</i> Language Application Grids
@@ -36,7 +45,23 @@ import java.util.List;
 public class Parser extends OpenNLPAbstractWebService {
     protected static final Logger logger = LoggerFactory.getLogger(Parser.class);
 
-    private opennlp.tools.parser.Parser parser;
+    // the advance percentage, which keys the pools and the memo, is rounded to 1/20ths
+    static final int ADVANCE_STEPS = 20;
+
+    // annotator pools by beam size and advance percentage, created on first use,
+    // the Parser.max-pools most recently used are kept
+    private final Map<String, AnnotatorPool<opennlp.tools.parser.Parser>> parsers = newPoolMap();
+
+    // parses of recent sentences, keyed by their whitespace separated tokens,
+    // "Parser.memo-size" entries at most, 0 disables it
+    private final int memoSize = getConfig("Parser.memo-size", 1000);
+    private final Map<String, Parse[]> memo = Collections.synchronizedMap(
+            new LinkedHashMap<String, Parse[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Parse[]> eldest) {
+                    return size() > memoSize;
+                }
+            });
 
     public Parser() throws OpenNLPWebServiceException {
         loadAnnotators();
@@ -45,8 +70,176 @@ public class Parser extends OpenNLPAbstractWebService {
 
     @Override
     synchronized protected void loadAnnotators() throws OpenNLPWebServiceException {
-        super.loadParserModel();
-        parser = ParserFactory.create(parserModel);
+        loadAnnotators(getBeamSize(null, AbstractBottomUpParser.defaultBeamSize), advancePercentage(null));
+    }
+
+    synchronized protected AnnotatorPool<opennlp.tools.parser.Parser> loadAnnotators(
+            final int beamSize, final double advancePercentage) throws OpenNLPWebServiceException {
+        String key = beamSize + ":" + advancePercentage;
+        AnnotatorPool<opennlp.tools.parser.Parser> pool = parsers.get(key);
+        if (pool == null) {
+            final ParserModel model = super.loadParserModel();
+            pool = new AnnotatorPool<>(getPoolSize(), model,
+                    new AnnotatorPool.Factory<opennlp.tools.parser.Parser>() {
+                        @Override
+                        public opennlp.tools.parser.Parser create() {
+                            if (model.getParserType() == ParserType.CHUNKING) {
+                                return new DeadlineParser(model, beamSize, advancePercentage);
+                            }
+                            return ParserFactory.create(model, beamSize, advancePercentage);
+                        }
+                    });
+            parsers.put(key, pool);
+        }
+        return pool;
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators() {
+        parsers.clear();
+        memo.clear();
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators(Set<BaseModel> dropped) {
+        if (unloadPools(parsers, dropped)) {
+            memo.clear();
+        }
+    }
+
+    private AnnotatorPool<opennlp.tools.parser.Parser> parsers(int beamSize, double advancePercentage) {
+        AnnotatorPool<opennlp.tools.parser.Parser> pool = parsers.get(beamSize + ":" + advancePercentage);
+        if (pool == null) {
+            try {
+                pool = loadAnnotators(beamSize, advancePercentage);
+            } catch (OpenNLPWebServiceException e) {
+                throw new RuntimeException("Fail to initialize Parser", e);
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * The share of the probability mass of the next steps the parser follows,
+     * the "advance-percentage" option, between 0 (excluded) and 1, rounded to
+     * a multiple of 1/{@link #ADVANCE_STEPS}.
+     */
+    protected double advancePercentage(Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        double advancePercentage = getOption(parameters, "advance-percentage",
+                AbstractBottomUpParser.defaultAdvancePercentage);
+        if (!(advancePercentage > 0 && advancePercentage <= 1)) {
+            throw new OpenNLPWebServiceException(String.format(
+                    "Wrong advance-percentage: %s, expecting more than 0 and at most 1", advancePercentage));
+        }
+        long steps = Math.max(1, Math.round(advancePercentage * ADVANCE_STEPS));
+        return steps / (double) ADVANCE_STEPS;
+    }
+
+    /**
+     * Chunking parser whose beam search stops at a deadline: the parses not
+     * advanced yet are completed as they are, so the sentence still gets its
+     * best partial tree (chunks under TOP) instead of the full one.
+     */
+    private static class DeadlineParser extends opennlp.tools.parser.chunking.Parser {
+        // System.nanoTime() of the deadline, 0 for none
+        long deadline;
+        boolean degraded;
+
+        DeadlineParser(ParserModel model, int beamSize, double advancePercentage) {
+            super(model, beamSize, advancePercentage);
+            reportFailedParse = false;
+        }
+
+        @Override
+        protected Parse[] advanceParses(Parse p, double probMass) {
+            if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+                degraded = true;
+                return null;
+            }
+            return super.advanceParses(p, probMass);
+        }
+    }
+
+    /**
+     * The parses of a sentence, null when the sentence was skipped, and
+     * whether a deadline cut the parsing short.
+     */
+    private static class Parsed {
+        final Parse[] parses;
+        final boolean degraded;
+
+        Parsed(Parse[] parses, boolean degraded) {
+            this.parses = parses;
+            this.degraded = degraded;
+        }
+    }
+
+    /**
+     * Parses a sentence, or returns the parses of the same sentence parsed
+     * before. The parses are shared and must not be modified.
+     */
+    protected Parse[] parseLine(String sentence) {
+        try {
+            return parseLine(sentence, 0, getBeamSize(null, AbstractBottomUpParser.defaultBeamSize),
+                    advancePercentage(null)).parses;
+        } catch (OpenNLPWebServiceException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses a sentence until the deadline, a System.nanoTime() or 0 for
+     * none. A sentence whose deadline has passed is not parsed at all.
+     */
+    private Parsed parseLine(String sentence, long deadline, int beamSize, double advancePercentage) {
+        // parses of other beams differ, they are memoized apart
+        String key = memoSize > 0 ? beamSize + ":" + advancePercentage + " " + normalize(sentence) : null;
+        if (key != null) {
+            Parse[] parses = memo.get(key);
+            if (parses != null) {
+                return new Parsed(parses, false);
+            }
+        }
+        if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+            return new Parsed(null, false);
+        }
+        AnnotatorPool<opennlp.tools.parser.Parser> pool = parsers(beamSize, advancePercentage);
+        opennlp.tools.parser.Parser parser = pool.borrow();
+        Parse[] parses;
+        boolean degraded = false;
+        try {
+            if (parser instanceof DeadlineParser) {
+                ((DeadlineParser) parser).deadline = deadline;
+            }
+            parses = ParserTool.parseLine(sentence, parser, 1);
+        } finally {
+            if (parser instanceof DeadlineParser) {
+                degraded = ((DeadlineParser) parser).degraded;
+                ((DeadlineParser) parser).deadline = 0;
+                ((DeadlineParser) parser).degraded = false;
+            }
+            pool.release(parser);
+        }
+        if (key != null && !degraded) {
+            memo.put(key, parses);
+        }
+        return new Parsed(parses, degraded);
+    }
+
+    /**
+     * The tokens of the sentence separated by single spaces, ParserTool only
+     * sees these tokens, so sentences differing in whitespace parse the same.
+     */
+    static String normalize(String sentence) {
+        StringBuilder builder = new StringBuilder(sentence.length());
+        StringTokenizer tokens = new StringTokenizer(sentence);
+        while (tokens.hasMoreTokens()) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(tokens.nextToken());
+        }
+        return builder.toString();
     }
 
     private String buildPennString(Parse parses[]) {
@@ -62,7 +255,7 @@ public class Parser extends OpenNLPAbstractWebService {
     /* parse() is only used in test suite to see the parsing results */
     public String parse(String sentence) {
         StringBuffer builder = new StringBuffer();
-        Parse parses[] = ParserTool.parseLine(sentence, parser, 1);
+        Parse parses[] = parseLine(sentence);
         System.out.println(" parses.length = " + parses.length);
         for (int pi = 0, pn = parses.length; pi < pn; pi++) {
             parses[pi].show(builder);
@@ -73,53 +266,127 @@ public class Parser extends OpenNLPAbstractWebService {
 
 
     @Override
-    public String execute(Container container) throws OpenNLPWebServiceException {
-        String txt = container.getText();
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        return Collections.singletonList(Uri.SENTENCE);
+    }
+
+    @Override
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container), parameters);
+    }
+
+    /**
+     * Parses the sentences. With a "deadline" (milliseconds for the whole
+     * request) or a "sentence-budget" (milliseconds per sentence), a sentence
+     * running out of time gets its best partial parse, and the sentences not
+     * started before the deadline are skipped. Their ids are listed in the
+     * "degraded" and "skipped" metadata of the view.
+     * <p>
+     * "beam-size", "advance-percentage" and "greedy" (a beam of 1) trade
+     * accuracy for speed.
+     */
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        logger.info("Executing");
+        long now = System.nanoTime();
+        long deadlineMillis = getOption(parameters, "deadline", 0L);
+        final long deadline = deadlineMillis > 0 ? now + deadlineMillis * 1000000L : 0;
+        final long budget = getOption(parameters, "sentence-budget", 0L) * 1000000L;
+        final int beamSize = getBeamSize(parameters, AbstractBottomUpParser.defaultBeamSize);
+        final double advancePercentage = advancePercentage(parameters);
+        String profile = getProfile(parameters);
+        boolean keepText = PROFILE_FULL.equals(profile);
+        boolean keepTree = !PROFILE_MINIMAL.equals(profile);
 
-        List<View> sentViews = container.findViewsThatContain(Uri.SENTENCE);
-        if (sentViews.size() == 0) {
+        Spans sentSpans = document.latest(Uri.SENTENCE, null);
+        if (sentSpans == null) {
             throw new OpenNLPWebServiceException(String.format(
                     "Wrong Input: CANNOT find %s within previous annotations",
                     Uri.SENTENCE));
         }
-        List<Annotation> sentAnns = sentViews.get(sentViews.size() - 1).getAnnotations();
 
-        View view = container.newView();
+        View view = document.getContainer().newView();
         view.addContains(Uri.PHRASE_STRUCTURE,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
+                getProducer(),
                 "parser:opennlp");
         view.addContains(Uri.CONSTITUENT,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
+                getProducer(),
                 "parser:opennlp");
 
-        view.addContains(Uri.CONSTITUENT,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
-                "parser:opennlp");
-        view.addContains(Uri.PHRASE_STRUCTURE,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
-                "parser:opennlp");
+        // parse the sentences concurrently, each worker borrowing its own parser,
+        // then build the annotations in sentence order to keep the ids stable.
+        String[] sentTexts = sentSpans.getWords();
+        List<Callable<Parsed>> tasks = new ArrayList<>(sentSpans.size());
+        for (int sid = 0; sid < sentSpans.size(); sid++) {
+            final String sentText = sentTexts[sid];
+            tasks.add(new Callable<Parsed>() {
+                @Override
+                public Parsed call() {
+                    long limit = deadline;
+                    if (budget > 0) {
+                        long end = System.nanoTime() + budget;
+                        limit = limit == 0 || end - limit < 0 ? end : limit;
+                    }
+                    return parseLine(sentText, limit, beamSize, advancePercentage);
+                }
+            });
+        }
+        List<Parsed> results = Workers.invokeAll(tasks);
 
-        for (int sid = 0; sid < sentAnns.size(); sid++) {
+        List<String> skipped = new ArrayList<>();
+        List<String> degraded = new ArrayList<>();
+        for (int sid = 0; sid < sentSpans.size(); sid++) {
             // for each sentence
-            Annotation sentAnn = sentAnns.get(sid);
-            String sentText = getTokenText(sentAnn, txt);
-            Parse parses[] = ParserTool.parseLine(sentText, parser, 1);
+            String sentText = sentTexts[sid];
+            Parsed parsed = results.get(sid);
+            if (parsed.parses == null) {
+                skipped.add(sentSpans.getId(sid));
+                continue;
+            }
+            if (parsed.degraded) {
+                degraded.add(sentSpans.getId(sid));
+            }
+            Parse parses[] = parsed.parses;
 
             Annotation ps = view.newAnnotation(PS_ID + sid, Uri.PHRASE_STRUCTURE,
-                    sentAnn.getStart(), sentAnn.getEnd());
-            ps.addFeature("sentence", sentText);
-            ps.addFeature("penntree", buildPennString(parses));
+                    sentSpans.getStart(sid), sentSpans.getEnd(sid));
+            if (keepText) {
+                ps.addFeature("sentence", sentText);
+            }
+            if (keepTree) {
+                ps.addFeature("penntree", buildPennString(parses));
+            }
             List<String> constituentIds = new LinkedList<>();
             for (Parse parse : parses) {
                 findConstituents(parse, constituentIds, sid, view);
             }
             ps.getFeatures().put(Features.PhraseStructure.CONSTITUENTS, constituentIds);
         }
-        Data<Container> data = new Data<>(Uri.LIF, container);
-        return Serializer.toJson(data);
+        if (skipped.size() > 0 || degraded.size() > 0) {
+            logger.warn(String.format("Deadline reached: %d sentences skipped, %d partially parsed.",
+                    skipped.size(), degraded.size()));
+            view.addMetaData("skipped", skipped);
+            view.addMetaData("degraded", degraded);
+        }
+        return view;
     }
 
 
+    @Override
+    protected boolean isCacheable(List<View> views) {
+        for (View view : views) {
+            if (view.getMetadata().containsKey("skipped")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected String findConstituents(Parse parse, List<String> constituentIds, int sentId, View view) {
         String cid = CONSTITUENT_ID + sentId + "_" + constituentIds.size();
         constituentIds.add(cid);
@@ -0,0 +1,198 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.metadata.IOSpecification;
+import org.lappsgrid.metadata.ServiceMetadata;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <i>Pipeline.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Runs several of the services (Splitter, Tokenizer, POSTagger, Chunker,
+ * NamedEntityRecognizer, Parser) in one call. The stages annotate the same
+ * in-memory container one after the other, and the LIF is serialized once at
+ * the end, instead of being serialized and parsed again between the services
+ * of a chain, and the stages read the views of the stages before them from
+ * the arrays of a shared {@link Document}. The output is the one of the
+ * chained services.
+ * <p>
+ * The stages are "Pipeline.stages" or the "stages" parameter of a request,
+ * comma separated service names, run in the given order.
+ */
+public class Pipeline extends OpenNLPAbstractWebService {
+
+    public static final String DEFAULT_STAGES = "Splitter,Tokenizer,POSTagger,NamedEntityRecognizer,Parser";
+    static final String STAGE_NAMES = "Splitter,Tokenizer,POSTagger,Chunker,NamedEntityRecognizer,Parser";
+
+    private static final Map<String, Class<? extends OpenNLPAbstractWebService>> STAGE_CLASSES = new LinkedHashMap<>();
+    static {
+        STAGE_CLASSES.put("splitter", Splitter.class);
+        STAGE_CLASSES.put("tokenizer", Tokenizer.class);
+        STAGE_CLASSES.put("postagger", POSTagger.class);
+        STAGE_CLASSES.put("chunker", Chunker.class);
+        STAGE_CLASSES.put("namedentityrecognizer", NamedEntityRecognizer.class);
+        STAGE_CLASSES.put("parser", Parser.class);
+    }
+
+    // the services of the stages, created on first use
+    private final Map<Class, OpenNLPAbstractWebService> stages = new LinkedHashMap<>();
+
+    public Pipeline() throws OpenNLPWebServiceException {
+        loadAnnotators();
+        this.metadata = loadMetadata();
+    }
+
+    @Override
+    protected void loadAnnotators() throws OpenNLPWebServiceException {
+        // the stages are services of their own, with their own annotators
+    }
+
+    @Override
+    protected void unloadAnnotators() {
+        // the stages listen to the model registry themselves
+    }
+
+    private synchronized OpenNLPAbstractWebService stage(Class<? extends OpenNLPAbstractWebService> stageClass)
+            throws OpenNLPWebServiceException {
+        OpenNLPAbstractWebService stage = stages.get(stageClass);
+        if (stage == null) {
+            try {
+                stage = stageClass.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new OpenNLPWebServiceException(String.format(
+                        "Fail to create the %s stage", stageClass.getSimpleName()), e);
+            }
+            stages.put(stageClass, stage);
+        }
+        return stage;
+    }
+
+    protected List<Class<? extends OpenNLPAbstractWebService>> getStages(Map<String, ?> parameters)
+            throws OpenNLPWebServiceException {
+        List<Class<? extends OpenNLPAbstractWebService>> classes = new ArrayList<>();
+        for (String name : getOption(parameters, "stages", DEFAULT_STAGES).split(",")) {
+            if (name.trim().length() == 0) {
+                continue;
+            }
+            Class<? extends OpenNLPAbstractWebService> stageClass = STAGE_CLASSES.get(name.trim().toLowerCase());
+            if (stageClass == null) {
+                throw new OpenNLPWebServiceException(String.format(
+                        "Unknown pipeline stage: %s, expecting some of %s", name.trim(), STAGE_NAMES));
+            }
+            classes.add(stageClass);
+        }
+        if (classes.size() == 0) {
+            throw new OpenNLPWebServiceException("No pipeline stage given.");
+        }
+        return classes;
+    }
+
+    /**
+     * The types the stages read, except those an earlier stage produces: the
+     * stages read the views of these, the upstream ones are not parsed.
+     */
+    @Override
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        Set<String> types = new LinkedHashSet<>();
+        Set<String> produced = new HashSet<>();
+        try {
+            for (Class<? extends OpenNLPAbstractWebService> stageClass : getStages(parameters)) {
+                OpenNLPAbstractWebService stage = stage(stageClass);
+                Collection<String> stageTypes = stage.getRequiredTypes(parameters);
+                if (stageTypes == null) {
+                    return null;
+                }
+                for (String type : stageTypes) {
+                    if (!produced.contains(type)) {
+                        types.add(type);
+                    }
+                }
+                produced.addAll(stage.getProducedTypes());
+            }
+        } catch (OpenNLPWebServiceException e) {
+            // reported by annotate()
+            return null;
+        }
+        return types;
+    }
+
+    @Override
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container, true), parameters);
+    }
+
+    /**
+     * Runs the stages over the document and returns the view of the last one.
+     * The stages hand the tokens, tags and sentences on as {@link Spans}.
+     */
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        logger.info("Executing");
+        View view = null;
+        for (Class<? extends OpenNLPAbstractWebService> stageClass : getStages(parameters)) {
+            view = stage(stageClass).annotate(document, parameters);
+        }
+        return view;
+    }
+
+    @Override
+    protected boolean isCacheable(List<View> views) {
+        List<OpenNLPAbstractWebService> created;
+        synchronized (this) {
+            created = new ArrayList<>(stages.values());
+        }
+        for (OpenNLPAbstractWebService stage : created) {
+            if (!stage.isCacheable(views)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String loadMetadata() {
+        ServiceMetadata meta = new ServiceMetadata();
+        meta.setName(this.getClass().getName());
+        meta.setDescription("pipeline:opennlp");
+        meta.setVersion(getVersion());
+        meta.setVendor("http://www.cs.brandeis.edu/");
+        meta.setLicense(Uri.APACHE2);
+
+        IOSpecification requires = new IOSpecification();
+        requires.setEncoding("UTF-8");
+        requires.addLanguage("en");
+        requires.addFormat(Uri.LAPPS);
+
+        IOSpecification produces = new IOSpecification();
+        produces.setEncoding("UTF-8");
+        produces.addLanguage("en");
+        produces.addFormat(Uri.LAPPS);
+        produces.addAnnotation(Uri.SENTENCE);
+        produces.addAnnotation(Uri.TOKEN);
+        produces.addAnnotation(Uri.POS);
+        produces.addAnnotation(Uri.CHUNK);
+        produces.addAnnotation(Uri.NE);
+        produces.addAnnotation(Uri.PHRASE_STRUCTURE);
+        produces.addAnnotation(Uri.CONSTITUENT);
+
+        meta.setRequires(requires);
+        meta.setProduces(produces);
+        Data<ServiceMetadata> data = new Data<> (Uri.META, meta);
+        return data.asPrettyJson();
+    }
+}
@@ -0,0 +1,37 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * <i>ReadinessServlet.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Answers 200 once the models are loaded and warmed up, and 503 before or
+ * when the startup failed, so that a load balancer only routes traffic to
+ * nodes that are fast.
+ * <p>
+ */
+public class ReadinessServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("text/plain");
+        response.setCharacterEncoding("UTF-8");
+        ModelRegistry registry = ModelRegistry.getInstance();
+        if (registry.isReady()) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.getWriter().println("READY");
+        } else if (registry.getFailure() != null) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().println("FAILED: " + registry.getFailure());
+        } else {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.getWriter().println("LOADING");
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.util.model.BaseModel;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <i>ResultCache.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Bounded cache of the views the services add, shared by all services.
+ * <p>
+ * An entry is keyed by a SHA-256 hash of the producer of the service (class
+ * and version), the request parameters, the text and the upstream views the
+ * service reads, so the same document sent again gets the same views without
+ * running the models. The views are kept serialized and parsed again on a
+ * hit, a cached view is never shared between two outputs. The cache is
+ * cleared when the {@link ModelRegistry} reloads or unloads models.
+ * <p>
+ * The cache is turned on with "cache.enabled" and holds at most
+ * "cache.max-size" megabytes of serialized views, the least recently used
+ * entries are evicted first. The counters are exposed as the MBean
+ * "edu.brandeis.cs.lappsgrid.opennlp:type=ResultCache,name=default".
+ */
+public class ResultCache implements ResultCacheMBean {
+    private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ResultCache INSTANCE = new ResultCache();
+
+    private final LinkedHashMap<String, String[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // the models behind the cached views changed, kept here since the
+    // registry holds it weakly
+    private final ModelRegistry.Listener modelListener = new ModelRegistry.Listener() {
+        @Override
+        public void modelsChanged(Set<BaseModel> dropped) {
+            clear();
+        }
+    };
+
+    ResultCache() {
+        ModelRegistry.getInstance().addListener(modelListener);
+        ServiceMetrics.register("ResultCache", "default", this);
+    }
+
+    public static ResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Boolean.parseBoolean(OpenNLPAbstractWebService.getConfig("cache.enabled", "false"));
+    }
+
+    /**
+     * Maximum size in chars of the serialized views.
+     */
+    long getMaxSize() {
+        return OpenNLPAbstractWebService.getConfig("cache.max-size", 64) * 1024L * 512L;
+    }
+
+    /**
+     * The key of a request: the producer, the parameters, the text and, for
+     * each of the types, the latest view that contains it. With null types,
+     * all the views of the container.
+     */
+    public String key(String producer, Map<String, ?> parameters, Container container, Collection<String> types) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, producer);
+        update(digest, parameters == null ? "" : Serializer.toJson(new TreeMap<>(parameters)));
+        update(digest, container.getText());
+        List<View> views = new ArrayList<>();
+        if (types == null) {
+            views.addAll(container.getViews());
+        } else {
+            for (String type : types) {
+                List<View> found = container.findViewsThatContain(type);
+                if (found.size() > 0 && !views.contains(found.get(found.size() - 1))) {
+                    views.add(found.get(found.size() - 1));
+                }
+            }
+        }
+        for (View view : views) {
+            update(digest, Serializer.toJson(view));
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            byte[] bytes = value.getBytes(UTF8);
+            digest.update(String.valueOf(bytes.length).getBytes(UTF8));
+            digest.update((byte) ':');
+            digest.update(bytes);
+        } else {
+            digest.update((byte) '-');
+        }
+    }
+
+    /**
+     * The cached views of the key, new instances every time, or null.
+     */
+    public List<View> get(String key) {
+        String[] json;
+        synchronized (this) {
+            json = entries.get(key);
+        }
+        if (json == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        List<View> views = new ArrayList<>(json.length);
+        for (String view : json) {
+            views.add(Serializer.parse(view, View.class));
+        }
+        return views;
+    }
+
+    public void put(String key, List<View> views) {
+        String[] json = new String[views.size()];
+        long weight = key.length();
+        for (int i = 0; i < json.length; i++) {
+            json[i] = Serializer.toJson(views.get(i));
+            weight += json[i].length();
+        }
+        long max = getMaxSize();
+        if (weight > max) {
+            logger.debug("Result of {} chars is larger than the cache.", weight);
+            return;
+        }
+        synchronized (this) {
+            String[] old = entries.put(key, json);
+            if (old != null) {
+                size -= weight(key, old);
+            }
+            size += weight;
+            Iterator<Map.Entry<String, String[]>> it = entries.entrySet().iterator();
+            while (size > max && it.hasNext()) {
+                Map.Entry<String, String[]> eldest = it.next();
+                size -= weight(eldest.getKey(), eldest.getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static long weight(String key, String[] json) {
+        long weight = key.length();
+        for (String view : json) {
+            weight += view.length();
+        }
+        return weight;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /**
+     * Size in chars of the cached views.
+     */
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
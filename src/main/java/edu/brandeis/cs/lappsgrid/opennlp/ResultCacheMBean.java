@@ -0,0 +1,23 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+/**
+ * <i>ResultCacheMBean.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * JMX view of the {@link ResultCache}.
+ */
+public interface ResultCacheMBean {
+
+    boolean isEnabled();
+
+    int getEntries();
+
+    long getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    long getEvictions();
+
+    void clear();
+}
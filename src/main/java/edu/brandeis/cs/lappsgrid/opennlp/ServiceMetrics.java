@@ -0,0 +1,267 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <i>ServiceMetrics.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Counters and timers of one service: the time spent reading the input,
+ * annotating and writing the output, the size of the documents, the tokens
+ * and sentences read or produced, the annotations added, the failed
+ * requests and the requests turned away by the {@link Admission}.
+ * <p>
+ * The metrics of each service are registered as the MBean
+ * "edu.brandeis.cs.lappsgrid.opennlp:type=ServiceMetrics,name=&lt;Service&gt;"
+ * and listed by {@link MetricsServlet}.
+ */
+public class ServiceMetrics implements ServiceMetricsMBean {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceMetrics.class);
+
+    public static final String DOMAIN = "edu.brandeis.cs.lappsgrid.opennlp";
+
+    private static final ConcurrentMap<String, ServiceMetrics> METRICS = new ConcurrentHashMap<>();
+
+    /**
+     * Total and maximum time of a stage.
+     */
+    static class Timer {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // another thread recorded a time meanwhile
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        double getTotalMillis() {
+            return total.get() / 1e6;
+        }
+
+        double getMaxMillis() {
+            return max.get() / 1e6;
+        }
+
+        void reset() {
+            count.set(0);
+            total.set(0);
+            max.set(0);
+        }
+    }
+
+    private final String name;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong chars = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private final AtomicLong sentences = new AtomicLong();
+    private final AtomicLong annotations = new AtomicLong();
+    final Timer parse = new Timer();
+    final Timer annotate = new Timer();
+    final Timer serialize = new Timer();
+
+    ServiceMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The metrics of the service, created and registered on first use.
+     */
+    public static ServiceMetrics forService(String name) {
+        ServiceMetrics metrics = METRICS.get(name);
+        if (metrics == null) {
+            ServiceMetrics created = new ServiceMetrics(name);
+            metrics = METRICS.putIfAbsent(name, created);
+            if (metrics == null) {
+                metrics = created;
+                register("ServiceMetrics", name, metrics);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * The metrics of all services by name.
+     */
+    public static Map<String, ServiceMetrics> getAll() {
+        return new TreeMap<>(METRICS);
+    }
+
+    /**
+     * Registers an MBean of this package, a failure is only logged.
+     */
+    static void register(String type, String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(String.format("%s:type=%s,name=%s", DOMAIN, type, name));
+            if (server.isRegistered(objectName)) {
+                // left by a previous deployment of the webapp
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (JMException | RuntimeException e) {
+            logger.warn(String.format("Cannot register the %s MBean of %s: %s", type, name, e.toString()));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void request(String text) {
+        requests.incrementAndGet();
+        if (text != null) {
+            chars.addAndGet(text.length());
+        }
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    void rejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Counts the annotations of the new views, and the tokens and sentences
+     * of the views of the types the service read (all when null) or produced.
+     */
+    void annotated(Container container, Collection<String> readTypes, List<View> newViews) {
+        boolean producedTokens = false;
+        boolean producedSentences = false;
+        for (View view : newViews) {
+            annotations.addAndGet(view.getAnnotations().size());
+            producedTokens |= view.contains(Uri.TOKEN);
+            producedSentences |= view.contains(Uri.SENTENCE);
+        }
+        if (producedTokens || readTypes == null || readTypes.contains(Uri.TOKEN)) {
+            tokens.addAndGet(latestSize(container, Uri.TOKEN));
+        }
+        if (producedSentences || readTypes == null || readTypes.contains(Uri.SENTENCE)) {
+            sentences.addAndGet(latestSize(container, Uri.SENTENCE));
+        }
+    }
+
+    /**
+     * Counts the annotations of a view written as a stream.
+     */
+    void streamed(View view, int count) {
+        annotations.addAndGet(count);
+        if (view.contains(Uri.TOKEN)) {
+            tokens.addAndGet(count);
+        }
+        if (view.contains(Uri.SENTENCE)) {
+            sentences.addAndGet(count);
+        }
+    }
+
+        private static int latestSize(Container container, String type) {
+        List<View> views = container.findViewsThatContain(type);
+        return views.size() == 0 ? 0 : views.get(views.size() - 1).getAnnotations().size();
+    }
+
+    @Override
+    public long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getChars() {
+        return chars.get();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.get();
+    }
+
+    @Override
+    public long getSentences() {
+        return sentences.get();
+    }
+
+    @Override
+    public long getAnnotations() {
+        return annotations.get();
+    }
+
+    @Override
+    public double getParseTimeMillis() {
+        return parse.getTotalMillis();
+    }
+
+    @Override
+    public double getParseMaxMillis() {
+        return parse.getMaxMillis();
+    }
+
+    @Override
+    public double getAnnotateTimeMillis() {
+        return annotate.getTotalMillis();
+    }
+
+    @Override
+    public double getAnnotateMaxMillis() {
+        return annotate.getMaxMillis();
+    }
+
+    @Override
+    public double getSerializeTimeMillis() {
+        return serialize.getTotalMillis();
+    }
+
+    @Override
+    public double getSerializeMaxMillis() {
+        return serialize.getMaxMillis();
+    }
+
+    @Override
+    public void reset() {
+        requests.set(0);
+        errors.set(0);
+        rejected.set(0);
+        chars.set(0);
+        tokens.set(0);
+        sentences.set(0);
+        annotations.set(0);
+        parse.reset();
+        annotate.reset();
+        serialize.reset();
+    }
+}
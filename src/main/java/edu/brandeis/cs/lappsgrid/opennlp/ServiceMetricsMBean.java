@@ -0,0 +1,38 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+/**
+ * <i>ServiceMetricsMBean.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * JMX view of the {@link ServiceMetrics} of a service, times are in
+ * milliseconds.
+ */
+public interface ServiceMetricsMBean {
+
+    long getRequests();
+
+    long getErrors();
+
+    long getRejected();
+
+    long getChars();
+
+    long getTokens();
+
+    long getSentences();
+
+    long getAnnotations();
+
+    double getParseTimeMillis();
+
+    double getParseMaxMillis();
+
+    double getAnnotateTimeMillis();
+
+    double getAnnotateMaxMillis();
+
+    double getSerializeTimeMillis();
+
+    double getSerializeMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,204 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.util.Span;
+import org.lappsgrid.serialization.lif.Annotation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <i>Spans.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Compact form of the annotations of a view: the ids, offsets and words in
+ * parallel arrays, and one string feature of the spans (e.g. the tags),
+ * instead of one {@link Annotation} with boxed offsets and a feature map per
+ * span. The services read the upstream views in this form, and the services
+ * producing a view hand it on in this form through the {@link Document}.
+ * <p>
+ * The feature values are interned, a view has few distinct tags. The words
+ * not given are cut from the text by the offsets when first asked for.
+ */
+public class Spans {
+
+    private final String[] ids;
+    private final int[] starts;
+    private final int[] ends;
+    private final String text;
+    private String[] words;
+    private final String feature;
+    private final String[] features;
+
+    /**
+     * @param text     the text the words are cut from, null when the words are given
+     * @param words    the words, null to cut them from the text
+     * @param feature  the name of the feature in features, null for none
+     * @param features the feature values, null for none
+     */
+    public Spans(String[] ids, int[] starts, int[] ends, String text, String[] words,
+                 String feature, String[] features) {
+        this.ids = ids;
+        this.starts = starts;
+        this.ends = ends;
+        this.text = text;
+        this.words = words;
+        this.feature = feature;
+        this.features = features;
+        if (features != null) {
+            for (int i = 0; i < features.length; i++) {
+                features[i] = features[i] == null ? null : features[i].intern();
+            }
+        }
+    }
+
+    /**
+     * Reads the annotations of a LIF view. The words are the "word" features,
+     * or else the covered text when the text is not null.
+     *
+     * @param feature the feature to read as well, null for none
+     */
+    public static Spans of(List<Annotation> annotations, String text, String feature)
+            throws OpenNLPWebServiceException {
+        int size = annotations.size();
+        String[] ids = new String[size];
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        String[] words = null;
+        String[] features = feature == null ? null : new String[size];
+        for (int i = 0; i < size; i++) {
+            Annotation annotation = annotations.get(i);
+            ids[i] = annotation.getId();
+            if (annotation.getStart() == null || annotation.getEnd() == null) {
+                throw new OpenNLPWebServiceException(String.format(
+                        "Wrong Input: annotation %s has no start or end offset", annotation.getId()));
+            }
+            starts[i] = annotation.getStart().intValue();
+            ends[i] = annotation.getEnd().intValue();
+            Object word = annotation.getFeatures().get("word");
+            if (word != null) {
+                if (words == null) {
+                    words = new String[size];
+                }
+                words[i] = word.toString();
+            }
+            if (feature != null) {
+                Object value = annotation.getFeatures().get(feature);
+                features[i] = value == null ? null : value.toString();
+            }
+        }
+        if (words != null && text != null) {
+            for (int i = 0; i < size; i++) {
+                if (words[i] == null) {
+                    words[i] = text.substring(starts[i], ends[i]);
+                }
+            }
+        }
+        return new Spans(ids, starts, ends, words == null ? text : null, words, feature, features);
+    }
+
+    /**
+     * The spans an annotator found in the text, with the ids of their
+     * annotations, the words are cut from the text.
+     */
+    public static Spans of(String[] ids, Span[] spans, String text) {
+        int[] starts = new int[spans.length];
+        int[] ends = new int[spans.length];
+        for (int i = 0; i < spans.length; i++) {
+            starts[i] = spans[i].getStart();
+            ends[i] = spans[i].getEnd();
+        }
+        return new Spans(ids, starts, ends, text, null, null, null);
+    }
+
+    /**
+     * Spans of a view annotating the same spans, e.g. the tags of the tokens,
+     * sharing the offsets and words of these.
+     */
+    public Spans annotate(String[] ids, String feature, String[] features) {
+        return new Spans(ids, starts, ends, text, words, feature, features);
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public String getId(int i) {
+        return ids[i];
+    }
+
+    public int getStart(int i) {
+        return starts[i];
+    }
+
+    public int getEnd(int i) {
+        return ends[i];
+    }
+
+    /**
+     * The words of the spans, shared and not to be modified, null when they
+     * were neither given nor can be cut from a text.
+     */
+    public synchronized String[] getWords() {
+        if (words == null && text != null) {
+            String[] cut = new String[starts.length];
+            for (int i = 0; i < cut.length; i++) {
+                cut[i] = text.substring(starts[i], ends[i]);
+            }
+            words = cut;
+        }
+        return words;
+    }
+
+    public String getFeature() {
+        return feature;
+    }
+
+    /**
+     * The values of {@link #getFeature()}, shared and not to be modified,
+     * null when the spans have no feature.
+     */
+    public String[] getFeatures() {
+        return features;
+    }
+
+    /**
+     * Splits the indexes of these spans into [from, to) ranges, one per
+     * sentence, or returns null when the spans or the sentences are not in
+     * document order. The spans outside any sentence make ranges of their own.
+     */
+    public List<int[]> ranges(Spans sentences) {
+        for (int i = 1; i < sentences.size(); i++) {
+            if (sentences.starts[i] < sentences.starts[i - 1]) {
+                return null;
+            }
+        }
+        List<int[]> ranges = new ArrayList<>();
+        int sid = 0;
+        int from = 0;
+        int current = -1;   // index of the sentence of the current range, -1 for outside
+        int lastStart = Integer.MIN_VALUE;
+        for (int i = 0; i < size(); i++) {
+            int start = starts[i];
+            int end = ends[i];
+            if (start < lastStart) {
+                return null;
+            }
+            lastStart = start;
+            while (sid < sentences.size() && sentences.ends[sid] <= start) {
+                sid++;
+            }
+            int owner = -1;
+            if (sid < sentences.size() && sentences.starts[sid] <= start && end <= sentences.ends[sid]) {
+                owner = sid;
+            }
+            if (i > from && owner != current) {
+                ranges.add(new int[]{from, i});
+                from = i;
+            }
+            current = owner;
+        }
+        if (size() > from) {
+            ranges.add(new int[]{from, size()});
+        }
+        return ranges;
+    }
+}
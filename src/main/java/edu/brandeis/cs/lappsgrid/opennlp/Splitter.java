@@ -4,15 +4,21 @@ import opennlp.tools.sentdetect.SentenceDetector;
 import opennlp.tools.sentdetect.SentenceDetectorME;
 import opennlp.tools.sentdetect.SentenceModel;
 import opennlp.tools.util.Span;
+import opennlp.tools.util.model.BaseModel;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * <i>AbstractOpenNLPWebService.java</i> Language Application Grids (<b>LAPPS</b>)
  * <p> 
@@ -24,7 +30,7 @@ import org.lappsgrid.serialization.lif.View;
  */
 public class Splitter extends OpenNLPAbstractWebService {
 
-    private SentenceDetector sentenceDetector;
+    private volatile AnnotatorPool<SentenceDetector> sentenceDetectors;
 
     public Splitter() throws OpenNLPWebServiceException {
         loadAnnotators();
@@ -33,57 +39,160 @@ public class Splitter extends OpenNLPAbstractWebService {
 
     @Override
     synchronized protected void loadAnnotators() throws OpenNLPWebServiceException {
-        super.loadSentenceModel();
-        sentenceDetector = new SentenceDetectorME(sentenceDetectorModel);
+        final SentenceModel model = super.loadSentenceModel();
+        sentenceDetectors = new AnnotatorPool<>(getPoolSize(), model,
+                new AnnotatorPool.Factory<SentenceDetector>() {
+                    @Override
+                    public SentenceDetector create() {
+                        return new SentenceDetectorME(model);
+                    }
+                });
     }
 
-    public String[] sentDetect(String s) {
-        if (sentenceDetector == null) {
-            try {
-                loadAnnotators();
-            } catch (OpenNLPWebServiceException e) {
-                throw new RuntimeException("Fail to initialize SentenceDetector", e);
+    @Override
+    synchronized protected void unloadAnnotators() {
+        sentenceDetectors = null;
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators(Set<BaseModel> dropped) {
+        if (sentenceDetectors != null && sentenceDetectors.isBuiltOn(dropped)) {
+            sentenceDetectors = null;
+        }
+    }
+
+    private AnnotatorPool<SentenceDetector> sentenceDetectors() {
+        AnnotatorPool<SentenceDetector> pool = sentenceDetectors;
+        if (pool == null) {
+            synchronized (this) {
+                if (sentenceDetectors == null) {
+                    try {
+                        loadAnnotators();
+                    } catch (OpenNLPWebServiceException e) {
+                        throw new RuntimeException("Fail to initialize SentenceDetector", e);
+                    }
+                }
+                pool = sentenceDetectors;
             }
         }
+        return pool;
+    }
 
-        String sentences[] = sentenceDetector.sentDetect(s);
-        return sentences;
+    public String[] sentDetect(String s) {
+        AnnotatorPool<SentenceDetector> pool = sentenceDetectors();
+        SentenceDetector sentenceDetector = pool.borrow();
+        try {
+            String sentences[] = sentenceDetector.sentDetect(s);
+            return sentences;
+        } finally {
+            pool.release(sentenceDetector);
+        }
     }
 
     public Span[] sentPosDetect(String s) {
-        if (sentenceDetector == null) {
-            try {
-                loadAnnotators();
-            } catch (OpenNLPWebServiceException e) {
-                throw new RuntimeException("Fail to initialize SentenceDetector", e);
-            }
+        AnnotatorPool<SentenceDetector> pool = sentenceDetectors();
+        SentenceDetector sentenceDetector = pool.borrow();
+        try {
+            Span [] offsets = sentenceDetector.sentPosDetect(s);
+            return offsets;
+        } finally {
+            pool.release(sentenceDetector);
+        }
+    }
+
+    @Override
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Splits a document longer than the "stream-window" option window by
+     * window. The last sentence of a window may be cut by its end, so the
+     * next window starts with it, unless it is the only one.
+     */
+    @Override
+    protected LifWriter.Stream stream(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        final String txt = container.getText();
+        final int window = (int) getOption(parameters, "stream-window", 0L);
+        if (window <= 0 || txt.length() <= window) {
+            return null;
         }
-        Span [] offsets = sentenceDetector.sentPosDetect(s);
-        return offsets;
+        logger.info("Streaming");
+        final String feature = PROFILE_FULL.equals(getProfile(parameters)) ? "sentence" : null;
+        // written after the views of the container, not added to it
+        final View view = new View();
+        view.addContains(Uri.SENTENCE,
+                getProducer(),
+                "splitter:opennlp");
+        return new LifWriter.Stream() {
+            @Override
+            public View getView() {
+                return view;
+            }
+
+            @Override
+            public int write(LifWriter writer) throws IOException {
+                int count = 0;
+                int pos = 0;
+                while (pos < txt.length()) {
+                    int end = Math.min(pos + window, txt.length());
+                    Span[] spans = sentPosDetect(txt.substring(pos, end));
+                    int done = end == txt.length() || spans.length < 2 ? spans.length : spans.length - 1;
+                    for (int i = 0; i < done; i++) {
+                        int start = pos + spans[i].getStart();
+                        int stop = pos + spans[i].getEnd();
+                        writer.writeSpan(SENT_ID + count++, Uri.SENTENCE, start, stop,
+                                feature, feature == null ? null : txt.substring(start, stop));
+                    }
+                    pos = done < spans.length ? pos + spans[done].getStart() : end;
+                }
+                return count;
+            }
+        };
     }
 
     @Override
-    public String execute(Container container) throws OpenNLPWebServiceException {
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container), parameters);
+    }
+
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
 
         logger.info("Executing");
-        String txt = container.getText();
+        String txt = document.getText();
 
-        View view = container.newView();
+        View view = document.getContainer().newView();
         view.addContains(Uri.SENTENCE,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
+                getProducer(),
                 "splitter:opennlp");
 
+        boolean keepText = PROFILE_FULL.equals(getProfile(parameters));
         Span[] spans = sentPosDetect(txt);
-        int count = 0;
-        for (Span span : spans) {
-            int start = span.getStart();
-            int end = span.getEnd();
-            Annotation ann = view.newAnnotation(SENT_ID + count++,
+        // the spans are only handed on when later stages read them
+        String[] ids = document.keepsSpans() ? new String[spans.length] : null;
+        for (int i = 0; i < spans.length; i++) {
+            String id = SENT_ID + i;
+            int start = spans[i].getStart();
+            int end = spans[i].getEnd();
+            Annotation ann = view.newAnnotation(id,
                     Uri.SENTENCE, start, end);
-            ann.getFeatures().put("sentence", txt.substring(start, end));
+            if (keepText) {
+                ann.getFeatures().put("sentence", txt.substring(start, end));
+            }
+            if (ids != null) {
+                ids[i] = id;
+            }
+        }
+        if (ids != null) {
+            document.put(view, Spans.of(ids, spans, txt));
         }
-        Data<Container> data = new Data<>(Uri.LIF, container);
-        return Serializer.toJson(data);
+        return view;
     }
 
     public String loadMetadata() {
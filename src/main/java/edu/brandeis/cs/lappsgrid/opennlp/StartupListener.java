@@ -0,0 +1,117 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.apache.commons.io.IOUtils;
+import org.lappsgrid.discriminator.Discriminators;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <i>StartupListener.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Loads all configured models in parallel when the webapp starts, then runs
+ * the warm-up corpus through every service so that the first requests do not
+ * pay for model loading and JIT compilation. Once done the {@link ModelRegistry}
+ * is marked ready, see {@link ReadinessServlet}. When a model cannot be loaded
+ * the registry is marked failed instead and the node is never ready.
+ * <p>
+ */
+public class StartupListener implements ServletContextListener {
+    private static final Logger logger = LoggerFactory.getLogger(StartupListener.class);
+
+    public static final String WARMUP_FILENAME = "/warmup.txt";
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                startup();
+            }
+        }, "opennlp-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        ModelRegistry.getInstance().setReady(false);
+    }
+
+    static void startup() {
+        long start = System.currentTimeMillis();
+        try {
+            int failures = ModelRegistry.getInstance().loadAll();
+            if (failures > 0) {
+                throw new OpenNLPWebServiceException(String.format(
+                        "%d models of registry.preload could not be loaded", failures));
+            }
+            warmUp(OpenNLPAbstractWebService.getConfig("registry.warmup-iterations", 10));
+        } catch (Throwable th) {
+            logger.error("Startup failed: " + th.toString());
+            // never ready, the probe keeps the traffic away from this node
+            ModelRegistry.getInstance().setFailed(th.toString());
+            return;
+        }
+        ModelRegistry.getInstance().setReady(true);
+        logger.info(String.format("Ready after %d ms.", System.currentTimeMillis() - start));
+    }
+
+    static void warmUp(int iterations) throws IOException {
+        if (iterations <= 0) {
+            return;
+        }
+        InputStream stream = StartupListener.class.getResourceAsStream(WARMUP_FILENAME);
+        if (stream == null) {
+            logger.warn("No \"" + WARMUP_FILENAME + "\" found, skipping warm-up.");
+            return;
+        }
+        String text;
+        try {
+            text = IOUtils.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+
+        OpenNLPAbstractWebService[] services = {
+                create(Splitter.class), create(Tokenizer.class), create(POSTagger.class),
+                create(Chunker.class), create(NamedEntityRecognizer.class), create(Parser.class)};
+
+        // annotates directly, so the warm-up neither fills the result cache
+        // nor counts in the metrics of the services
+        logger.info(String.format("Warming up with %d iterations.", iterations));
+        for (int i = 0; i < iterations; i++) {
+            Container container = new Container();
+            container.setText(text);
+            container.setLanguage("en");
+            for (OpenNLPAbstractWebService service : services) {
+                if (service == null) {
+                    continue;
+                }
+                try {
+                    service.annotate(container, null);
+                } catch (OpenNLPWebServiceException e) {
+                    logger.warn(String.format("Warm-up of %s failed: %s",
+                            service.getClass().getSimpleName(), e.toString()));
+                }
+            }
+            Serializer.toJson(new Data<>(Discriminators.Uri.LIF, container));
+        }
+    }
+
+    private static OpenNLPAbstractWebService create(Class<? extends OpenNLPAbstractWebService> service) {
+        try {
+            return service.newInstance();
+        } catch (Exception e) {
+            logger.warn(String.format("Skipping warm-up of %s: %s", service.getSimpleName(), e.toString()));
+            return null;
+        }
+    }
+}
@@ -3,15 +3,21 @@ package edu.brandeis.cs.lappsgrid.opennlp;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
 import opennlp.tools.util.Span;
+import opennlp.tools.util.model.BaseModel;
 import org.lappsgrid.discriminator.Discriminators.Uri;
 import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
-import org.lappsgrid.serialization.Serializer;
 import org.lappsgrid.serialization.lif.Annotation;
 import org.lappsgrid.serialization.lif.Container;
 import org.lappsgrid.serialization.lif.View;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * <i>Tokenizer.java</i> Language Application Grids (<b>LAPPS</b>)
  * <p> 
@@ -23,7 +29,7 @@ import org.lappsgrid.serialization.lif.View;
  */
 public class Tokenizer extends OpenNLPAbstractWebService {
 
-    private opennlp.tools.tokenize.Tokenizer tokenizer;
+    private volatile AnnotatorPool<opennlp.tools.tokenize.Tokenizer> tokenizers;
 
     public Tokenizer() throws OpenNLPWebServiceException {
         loadAnnotators();
@@ -31,40 +37,164 @@ public class Tokenizer extends OpenNLPAbstractWebService {
     }
 
     @Override
-    protected void loadAnnotators() throws OpenNLPWebServiceException {
-        super.loadTokenizerModel();
-        tokenizer = new TokenizerME(tokenizerModel);
+    synchronized protected void loadAnnotators() throws OpenNLPWebServiceException {
+        final TokenizerModel model = super.loadTokenizerModel();
+        tokenizers = new AnnotatorPool<>(getPoolSize(), model,
+                new AnnotatorPool.Factory<opennlp.tools.tokenize.Tokenizer>() {
+                    @Override
+                    public opennlp.tools.tokenize.Tokenizer create() {
+                        return new TokenizerME(model);
+                    }
+                });
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators() {
+        tokenizers = null;
+    }
+
+    @Override
+    synchronized protected void unloadAnnotators(Set<BaseModel> dropped) {
+        if (tokenizers != null && tokenizers.isBuiltOn(dropped)) {
+            tokenizers = null;
+        }
+    }
+
+    private AnnotatorPool<opennlp.tools.tokenize.Tokenizer> tokenizers() {
+        AnnotatorPool<opennlp.tools.tokenize.Tokenizer> pool = tokenizers;
+        if (pool == null) {
+            synchronized (this) {
+                if (tokenizers == null) {
+                    try {
+                        loadAnnotators();
+                    } catch (OpenNLPWebServiceException e) {
+                        throw new RuntimeException("Fail to initialize Tokenizer", e);
+                    }
+                }
+                pool = tokenizers;
+            }
+        }
+        return pool;
     }
 
     public String[] tokenize(String s) {
-        String tokens[] = tokenizer.tokenize(s);
-        return tokens;
+        AnnotatorPool<opennlp.tools.tokenize.Tokenizer> pool = tokenizers();
+        opennlp.tools.tokenize.Tokenizer tokenizer = pool.borrow();
+        try {
+            String tokens[] = tokenizer.tokenize(s);
+            return tokens;
+        } finally {
+            pool.release(tokenizer);
+        }
     }
 
     public Span[] tokenizePos(String s) {
-        Span [] boundaries = tokenizer.tokenizePos(s);
-        return boundaries;
+        AnnotatorPool<opennlp.tools.tokenize.Tokenizer> pool = tokenizers();
+        opennlp.tools.tokenize.Tokenizer tokenizer = pool.borrow();
+        try {
+            Span [] boundaries = tokenizer.tokenizePos(s);
+            return boundaries;
+        } finally {
+            pool.release(tokenizer);
+        }
+    }
+
+    @Override
+    protected Collection<String> getRequiredTypes(Map<String, ?> parameters) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Tokenizes a document longer than the "stream-window" option window by
+     * window. The windows end at whitespace, which TokenizerME never looks
+     * across, so the tokens are the same as for the whole text.
+     */
+    @Override
+    protected LifWriter.Stream stream(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        final String txt = container.getText();
+        final int window = (int) getOption(parameters, "stream-window", 0L);
+        if (window <= 0 || txt.length() <= window) {
+            return null;
+        }
+        logger.info("Streaming");
+        final String feature = PROFILE_FULL.equals(getProfile(parameters)) ? "word" : null;
+        // written after the views of the container, not added to it
+        final View view = new View();
+        view.addContains(Uri.TOKEN,
+                getProducer(),
+                "tokenizer:opennlp");
+        return new LifWriter.Stream() {
+            @Override
+            public View getView() {
+                return view;
+            }
+
+            @Override
+            public int write(LifWriter writer) throws IOException {
+                int count = 0;
+                int pos = 0;
+                while (pos < txt.length()) {
+                    int end = Math.min(pos + window, txt.length());
+                    if (end < txt.length()) {
+                        int cut = end;
+                        while (cut > pos && !Character.isWhitespace(txt.charAt(cut))) {
+                            cut--;
+                        }
+                        // a token longer than the window is cut
+                        end = cut > pos ? cut : end;
+                    }
+                    for (Span span : tokenizePos(txt.substring(pos, end))) {
+                        int start = pos + span.getStart();
+                        int stop = pos + span.getEnd();
+                        writer.writeSpan(TOKEN_ID + count++, Uri.TOKEN, start, stop,
+                                feature, feature == null ? null : txt.substring(start, stop));
+                    }
+                    pos = end;
+                }
+                return count;
+            }
+        };
     }
 
     @Override
-    public String execute(Container container) throws OpenNLPWebServiceException {
+    protected View annotate(Container container) throws OpenNLPWebServiceException {
+        return annotate(container, null);
+    }
+
+    @Override
+    protected View annotate(Container container, Map<String, ?> parameters) throws OpenNLPWebServiceException {
+        return annotate(new Document(container), parameters);
+    }
+
+    @Override
+    protected View annotate(Document document, Map<String, ?> parameters) throws OpenNLPWebServiceException {
         logger.info("Executing");
-        String txt = container.getText();
-        View view = container.newView();
+        String txt = document.getText();
+        View view = document.getContainer().newView();
         view.addContains(Uri.TOKEN,
-                String.format("%s:%s", this.getClass().getName(), getVersion()),
+                getProducer(),
                 "tokenizer:opennlp");
+        boolean keepText = PROFILE_FULL.equals(getProfile(parameters));
         Span[] spans = tokenizePos(txt);
-        int count = 0;
-        for (Span span : spans) {
-            int start = span.getStart();
-            int end = span.getEnd();
-            Annotation ann = view.newAnnotation(TOKEN_ID + count++,
+        // the spans are only handed on when later stages read them
+        String[] ids = document.keepsSpans() ? new String[spans.length] : null;
+        for (int i = 0; i < spans.length; i++) {
+            String id = TOKEN_ID + i;
+            int start = spans[i].getStart();
+            int end = spans[i].getEnd();
+            Annotation ann = view.newAnnotation(id,
                     Uri.TOKEN, start, end);
-            ann.getFeatures().put("word", txt.substring(start, end));
+            if (keepText) {
+                ann.getFeatures().put("word", txt.substring(start, end));
+            }
+            if (ids != null) {
+                ids[i] = id;
+            }
+        }
+        if (ids != null) {
+            document.put(view, Spans.of(ids, spans, txt));
         }
-        Data<Container> data = new Data<>(Uri.LIF, container);
-        return Serializer.toJson(data);
+        return view;
     }
 
     public String loadMetadata() {
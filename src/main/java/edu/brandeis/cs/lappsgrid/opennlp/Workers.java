@@ -0,0 +1,106 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <i>Workers.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * Bounded thread pool shared by all services to spread the work of a single
+ * request (sentences, models, ...) over the available cores.
+ * <p>
+ * The size is configured with "workers.pool-size" and defaults to the number of
+ * processors. Tasks submitted from a worker thread run inline, so nested
+ * parallel sections can never dead-lock the pool.
+ */
+public class Workers {
+
+    private static final String THREAD_PREFIX = "opennlp-worker-";
+
+    private static volatile ExecutorService executor;
+
+    private Workers() {
+    }
+
+    static ExecutorService executor() {
+        if (executor == null) {
+            synchronized (Workers.class) {
+                if (executor == null) {
+                    int size = OpenNLPAbstractWebService.getConfig("workers.pool-size", 0);
+                    if (size <= 0) {
+                        size = Runtime.getRuntime().availableProcessors();
+                    }
+                    executor = Executors.newFixedThreadPool(size, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, THREAD_PREFIX + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return executor;
+    }
+
+    static boolean isWorkerThread() {
+        return Thread.currentThread().getName().startsWith(THREAD_PREFIX);
+    }
+
+    /**
+     * Runs all tasks and returns their results in the order of the tasks.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() <= 1 || isWorkerThread()) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw unchecked(e);
+                }
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor().submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for workers", e);
+        } catch (ExecutionException e) {
+            throw unchecked(e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable th) {
+        if (th instanceof RuntimeException) {
+            return (RuntimeException) th;
+        }
+        if (th instanceof Error) {
+            throw (Error) th;
+        }
+        return new RuntimeException(th);
+    }
+}
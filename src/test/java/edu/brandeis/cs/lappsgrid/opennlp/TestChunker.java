@@ -0,0 +1,98 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import opennlp.tools.util.Span;
+import org.junit.Assert;
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.metadata.IOSpecification;
+import org.lappsgrid.metadata.ServiceMetadata;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <i>TestChunker.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * <p> Test case is from the <a href="http://opennlp.apache.org/documentation/1.5.3/manual/opennlp.html#tools.chunker">OpenNLP manual</a>
+ * <p>
+ */
+public class TestChunker extends TestService {
+
+    String testSent = "Rockwell said the agreement calls for it to supply 200 additional so-called shipsets for the planes.";
+
+    public TestChunker() throws OpenNLPWebServiceException {
+        service = new Chunker();
+    }
+
+    @Test
+    public void testChunk() throws OpenNLPWebServiceException {
+        String[] tokens = {"Rockwell", "said", "the", "agreement", "calls", "for", "it", "to", "supply",
+                "200", "additional", "so-called", "shipsets", "for", "the", "planes", "."};
+        String[] tags = {"NNP", "VBD", "DT", "NN", "VBZ", "IN", "PRP", "TO", "VB",
+                "CD", "JJ", "JJ", "NNS", "IN", "DT", "NNS", "."};
+        Span[] chunks = new Chunker().chunk(tokens, tags);
+        System.out.println(Arrays.toString(chunks));
+        Assert.assertEquals("Chunk Failure.",
+                "[[0..1) NP, [1..2) VP, [2..4) NP, [4..5) VP, [5..6) SBAR, [6..7) NP, [7..9) VP, [9..13) NP, [13..14) PP, [14..16) NP]",
+                Arrays.toString(chunks));
+    }
+
+    @Test
+    public void testExecute() throws OpenNLPWebServiceException {
+        String tagged = new POSTagger().execute(new Tokenizer().execute(new Splitter().execute(testSent)));
+        String result = service.execute(tagged);
+        System.out.println(result);
+
+        Data data = Serializer.parse(result, Data.class);
+        Assert.assertEquals(Uri.LIF, data.getDiscriminator());
+        Container container = new Container((Map) data.getPayload());
+        List<View> views = container.findViewsThatContain(Uri.CHUNK);
+        Assert.assertEquals(1, views.size());
+        List<Annotation> chunks = views.get(0).getAnnotations();
+        Assert.assertTrue("No chunk found", chunks.size() > 0);
+        Assert.assertEquals("NP", chunks.get(0).getLabel());
+        Assert.assertEquals("Rockwell", chunks.get(0).getFeature("word"));
+        for (Annotation chunk : chunks) {
+            Assert.assertEquals(chunk.getFeature("word"),
+                    testSent.substring(chunk.getStart().intValue(), chunk.getEnd().intValue()));
+        }
+    }
+
+    @Test
+    public void testExecuteWithoutTags() {
+        String tokens = new Data<>(Uri.LIF, wrapContainer(testSent)).asJson();
+        Data data = Serializer.parse(service.execute(tokens), Data.class);
+        Assert.assertEquals(Uri.ERROR, data.getDiscriminator());
+    }
+
+    @Test
+    public void testMetadata() {
+        String json = service.getMetadata();
+        Assert.assertNotNull("service.getMetadata() returned null", json);
+
+        Data data = Serializer.parse(json, Data.class);
+        Assert.assertNotNull("Unable to parse metadata json.", data);
+        Assert.assertNotSame(data.getPayload().toString(), Uri.ERROR, data.getDiscriminator());
+
+        ServiceMetadata metadata = new ServiceMetadata((Map) data.getPayload());
+        Assert.assertEquals("Vendor is not correct", "http://www.cs.brandeis.edu/", metadata.getVendor());
+        Assert.assertEquals("Name is not correct", service.getClass().getName(), metadata.getName());
+        Assert.assertEquals("Version is not correct", service.getVersion(), metadata.getVersion());
+        Assert.assertEquals("License is not correct", Uri.APACHE2, metadata.getLicense());
+
+        IOSpecification requires = metadata.getRequires();
+        Assert.assertTrue("Tokens not required", requires.getAnnotations().contains(Uri.TOKEN));
+        Assert.assertTrue("Tags not required", requires.getAnnotations().contains(Uri.POS));
+
+        IOSpecification produces = metadata.getProduces();
+        Assert.assertEquals("Produces encoding is not correct", "UTF-8", produces.getEncoding());
+        Assert.assertEquals("Too many annotation types produced", 1, produces.getAnnotations().size());
+        Assert.assertEquals("Chunks not produced", Uri.CHUNK, produces.getAnnotations().get(0));
+    }
+}
@@ -0,0 +1,47 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * <i>TestModelRegistry.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * The preload and warm-up of the webapp startup, which run before any
+ * service exists.
+ */
+public class TestModelRegistry {
+
+    @Test
+    public void testPreloadReadsConfig() throws Exception {
+        // as at startup: no service has read the settings yet
+        OpenNLPAbstractWebService.resetConfig();
+        Assert.assertEquals("service.properties not read before the services", 10,
+                OpenNLPAbstractWebService.getConfig("registry.warmup-iterations", -1));
+
+        File dir = Files.createTempDirectory("snapshots").toFile();
+        ModelRegistry registry = ModelRegistry.getInstance();
+        OpenNLPAbstractWebService.CONFIG.setProperty("registry.snapshot-dir", dir.getPath());
+        OpenNLPAbstractWebService.CONFIG.setProperty("registry.preload", "Sentence-Detector");
+        try {
+            registry.evictIdle(-1, ModelRegistry.newModelSet());
+            Assert.assertEquals(0, registry.loadAll());
+            Assert.assertTrue("Preload should write the snapshot of the configured directory",
+                    new ModelSnapshots(dir).getFile("/en-sent.bin").isFile());
+        } finally {
+            OpenNLPAbstractWebService.resetConfig();
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    @Test
+    public void testWarmUpNotCounted() throws Exception {
+        ServiceMetrics metrics = ServiceMetrics.forService(Tokenizer.class.getSimpleName());
+        long requests = metrics.getRequests();
+        StartupListener.warmUp(2);
+        Assert.assertEquals("Warm-up should not count as requests", requests, metrics.getRequests());
+    }
+}
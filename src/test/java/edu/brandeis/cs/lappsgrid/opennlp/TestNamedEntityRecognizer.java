@@ -55,6 +55,23 @@ public class TestNamedEntityRecognizer extends TestService {
 				spans);
 	}
 
+	@Test
+	public void testPoolSizeIndependent() throws OpenNLPWebServiceException {
+		String text = "Mike Smith is from Boston. He met John Brown in Paris. Mary Jones works at IBM. "
+				+ "Smith went back to Boston. Brown and Jones stayed in London. Mike called Mary from New York.";
+		String input = new Tokenizer().execute(new Splitter().execute(text));
+		String single;
+		System.setProperty("NamedEntityRecognizer.pool-size", "1");
+		try {
+			single = new NamedEntityRecognizer().execute(input);
+			System.setProperty("NamedEntityRecognizer.pool-size", "4");
+			Assert.assertEquals("Named entities depend on the pool size.",
+					single, new NamedEntityRecognizer().execute(input));
+		} finally {
+			System.clearProperty("NamedEntityRecognizer.pool-size");
+		}
+	}
+
     @Test
     public void testExecute(){
 
@@ -9,9 +9,14 @@ import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
 import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+import org.lappsgrid.vocabulary.Features;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -70,6 +75,92 @@ public class TestPOSTagger extends TestService {
 
         System.out.println("\\-----------------------------------/\n");
     }
+
+    @Test
+    public void testSentenceRanges() throws OpenNLPWebServiceException {
+        List<Annotation> sentences = Arrays.asList(
+                new Annotation(Uri.SENTENCE, 2, 10),
+                new Annotation(Uri.SENTENCE, 12, 20));
+        List<Annotation> tokens = Arrays.asList(
+                new Annotation(Uri.TOKEN, 0, 1), new Annotation(Uri.TOKEN, 2, 4),
+                new Annotation(Uri.TOKEN, 5, 10), new Annotation(Uri.TOKEN, 10, 11),
+                new Annotation(Uri.TOKEN, 12, 14), new Annotation(Uri.TOKEN, 15, 20),
+                new Annotation(Uri.TOKEN, 21, 22), new Annotation(Uri.TOKEN, 23, 24));
+        List<int[]> ranges = Spans.of(tokens, null, null).ranges(Spans.of(sentences, null, null));
+        int[][] goldRanges = {{0, 1}, {1, 3}, {3, 4}, {4, 6}, {6, 8}};
+        Assert.assertArrayEquals("Sentence ranges Failure.", goldRanges, ranges.toArray(new int[0][]));
+    }
+
+    @Test
+    public void testExecuteSentenceScoped() throws OpenNLPWebServiceException {
+        String input = new Tokenizer().execute(new Splitter().execute("Hi. How are you? This, is Mike."));
+        Data data = Serializer.parse(input, Data.class);
+        data.setParameter("sentence-scoped", "true");
+        String json = service.execute(Serializer.toJson(data));
+        System.out.println(json);
+
+        Container container = new Container((Map) Serializer.parse(json, Data.class).getPayload());
+        List<View> posViews = container.findViewsThatContain(Uri.POS);
+        Assert.assertEquals("POS view not produced", 1, posViews.size());
+        Assert.assertEquals("Every token should be tagged", 11, posViews.get(0).getAnnotations().size());
+    }
+
+    @Test
+    public void testExecutePerceptron() throws OpenNLPWebServiceException {
+        String input = new Tokenizer().execute(new Splitter().execute("Hi. How are you? This, is Mike."));
+        Data data = Serializer.parse(input, Data.class);
+        data.setParameter("model", POSTagger.PERCEPTRON);
+        String json = service.execute(Serializer.toJson(data));
+        System.out.println(json);
+
+        Container container = new Container((Map) Serializer.parse(json, Data.class).getPayload());
+        View view = container.findViewsThatContain(Uri.POS).get(0);
+        Assert.assertEquals(POSTagger.PERCEPTRON, view.getMetadata().get("model"));
+        String[] tokens = {"Hi", ".", "How", "are", "you", "?", "This", ",", "is", "Mike", "."};
+        String[] tags = ((POSTagger) service).tag(tokens, POSTagger.PERCEPTRON);
+        for (int i = 0; i < tags.length; i++) {
+            Assert.assertEquals(tags[i], view.getAnnotations().get(i).getFeature(Features.Token.POS));
+        }
+
+        data.setParameter("model", "unknown");
+        Data error = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+        Assert.assertEquals("Unknown model should fail", Uri.ERROR, error.getDiscriminator());
+    }
+
+    @Test
+    public void testExecuteGreedy() throws OpenNLPWebServiceException {
+        String input = new Tokenizer().execute(new Splitter().execute("Hi. How are you? This, is Mike."));
+        Data data = Serializer.parse(input, Data.class);
+        data.setParameter("greedy", "true");
+        String json = service.execute(Serializer.toJson(data));
+
+        Container container = new Container((Map) Serializer.parse(json, Data.class).getPayload());
+        View view = container.findViewsThatContain(Uri.POS).get(0);
+        String[] tokens = {"Hi", ".", "How", "are", "you", "?", "This", ",", "is", "Mike", "."};
+        String[] tags = ((POSTagger) service).tag(tokens, POSTagger.MAXENT, 1);
+        for (int i = 0; i < tags.length; i++) {
+            Assert.assertEquals(tags[i], view.getAnnotations().get(i).getFeature(Features.Token.POS));
+        }
+
+        data.setParameter("greedy", "false");
+        data.setParameter("beam-size", "0");
+        Data error = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+        Assert.assertEquals("Wrong beam size should fail", Uri.ERROR, error.getDiscriminator());
+    }
+
+    @Test
+    public void testExecuteLazyParsing() throws OpenNLPWebServiceException {
+        String input = service.execute(new Tokenizer().execute(new Splitter().execute("Hi. How are you? This, is Mike.")));
+        String lazy = service.execute(input);
+        System.setProperty("lif.lazy-parsing", "false");
+        try {
+            Assert.assertEquals("Lazy parsing changed the output.", service.execute(input), lazy);
+        } finally {
+            System.clearProperty("lif.lazy-parsing");
+        }
+        Container container = new Container((Map) Serializer.parse(lazy, Data.class).getPayload());
+        Assert.assertEquals("Upstream views must be kept", 4, container.getViews().size());
+    }
     
     @Test
     public void testMetadata() {
@@ -8,8 +8,13 @@ import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
 import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Annotation;
+import org.lappsgrid.serialization.lif.Container;
+import org.lappsgrid.serialization.lif.View;
+import org.lappsgrid.vocabulary.Features;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -45,6 +50,76 @@ public class TestParser extends TestService {
 		Assert.assertEquals("Parse Failure.", print, goldPrint);
 	}
 
+	@Test
+	public void testParseMemo() throws OpenNLPWebServiceException {
+		Parser parser = new Parser();
+		opennlp.tools.parser.Parse[] parses = parser.parseLine("Programcreek is a very huge and useful website.");
+		Assert.assertSame("Repeated sentence should not be parsed again",
+				parses, parser.parseLine("Programcreek  is a very\thuge and useful website. "));
+		Assert.assertEquals("Programcreek is a very huge and useful website.",
+				Parser.normalize(" Programcreek  is a very\thuge and useful\nwebsite."));
+	}
+
+	@Test
+	public void testExecuteDeadline() {
+		Data data = Serializer.parse(splitterjson, Data.class);
+		data.setParameter("deadline", "1");
+		Data result = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+		Assert.assertEquals(Uri.LIF, result.getDiscriminator());
+		Container container = new Container((Map) result.getPayload());
+		View view = container.getViews().get(container.getViews().size() - 1);
+		List skipped = (List) view.getMetadata().get("skipped");
+		List degraded = (List) view.getMetadata().get("degraded");
+		Assert.assertNotNull("Deadline should cut the parsing short", skipped);
+		Assert.assertTrue(skipped.size() + degraded.size() > 0);
+		int parsed = 0;
+		for (Annotation annotation : view.getAnnotations()) {
+			if (Uri.PHRASE_STRUCTURE.equals(annotation.getAtType())) {
+				parsed++;
+			}
+		}
+		Assert.assertEquals("Every sentence is parsed or skipped", 4, parsed + skipped.size());
+	}
+
+	@Test
+	public void testExecuteGreedy() {
+		Data data = Serializer.parse(splitterjson, Data.class);
+		data.setParameter("greedy", "true");
+		Data result = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+		Assert.assertEquals(Uri.LIF, result.getDiscriminator());
+		Container container = new Container((Map) result.getPayload());
+		View view = container.getViews().get(container.getViews().size() - 1);
+		int parsed = 0;
+		for (Annotation annotation : view.getAnnotations()) {
+			if (Uri.PHRASE_STRUCTURE.equals(annotation.getAtType())) {
+				parsed++;
+			}
+		}
+		Assert.assertEquals("Every sentence should be parsed", 4, parsed);
+
+		data.setParameter("greedy", "false");
+		data.setParameter("advance-percentage", "1.5");
+		result = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+		Assert.assertEquals("Wrong advance-percentage should fail", Uri.ERROR, result.getDiscriminator());
+	}
+
+	@Test
+	public void testExecuteProfile() {
+		Data data = Serializer.parse(splitterjson, Data.class);
+		data.setParameter("profile", "minimal");
+		Data result = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+		Assert.assertEquals(Uri.LIF, result.getDiscriminator());
+		Container container = new Container((Map) result.getPayload());
+		View view = container.getViews().get(container.getViews().size() - 1);
+		for (Annotation annotation : view.getAnnotations()) {
+			if (Uri.PHRASE_STRUCTURE.equals(annotation.getAtType())) {
+				Assert.assertNull("Minimal profile should drop the sentences", annotation.getFeature("sentence"));
+				Assert.assertNull("Minimal profile should drop the Penn trees", annotation.getFeature("penntree"));
+				Assert.assertNotNull(annotation.getFeatures().get(Features.PhraseStructure.CONSTITUENTS));
+			}
+		}
+	}
+
     @Test
     public void testExecute(){
 
@@ -0,0 +1,119 @@
+package edu.brandeis.cs.lappsgrid.opennlp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lappsgrid.discriminator.Discriminators.Uri;
+import org.lappsgrid.metadata.IOSpecification;
+import org.lappsgrid.metadata.ServiceMetadata;
+import org.lappsgrid.serialization.Data;
+import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <i>TestPipeline.java</i> Language Application Grids (<b>LAPPS</b>)
+ * <p>
+ * The fused pipeline against the same services chained one after the other.
+ */
+public class TestPipeline extends TestService {
+
+    String testSent = "Mike, Smith is a good person and he is from Boston. John and Mary went to the store.";
+
+    public TestPipeline() throws OpenNLPWebServiceException {
+        service = new Pipeline();
+    }
+
+    private String input(String stages) {
+        Data<Container> data = new Data<>(Uri.LIF, wrapContainer(testSent));
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("stages", stages);
+        data.setParameters(parameters);
+        return data.asJson();
+    }
+
+    @Test
+    public void testSameAsChain() throws OpenNLPWebServiceException {
+        String chained = new Data<>(Uri.LIF, wrapContainer(testSent)).asJson();
+        chained = new Splitter().execute(chained);
+        chained = new Tokenizer().execute(chained);
+        chained = new POSTagger().execute(chained);
+
+        String fused = service.execute(input("Splitter,Tokenizer,POSTagger"));
+        System.out.println(fused);
+        Assert.assertEquals(chained, fused);
+
+        Container container = new Container((Map) Serializer.parse(fused, Data.class).getPayload());
+        Assert.assertEquals(3, container.getViews().size());
+    }
+
+    @Test
+    public void testSpansSameAsChain() throws OpenNLPWebServiceException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("sentence-scoped", "true");
+        Data<Container> data = new Data<>(Uri.LIF, wrapContainer(testSent));
+        data.setParameters(parameters);
+        String chained = new Splitter().execute(data.asJson());
+        chained = new Tokenizer().execute(chained);
+        Data tokens = Serializer.parse(chained, Data.class);
+        tokens.setParameters(parameters);
+        chained = new Chunker().execute(new POSTagger().execute(Serializer.toJson(tokens)));
+
+        parameters.put("stages", "Splitter,Tokenizer,POSTagger,Chunker");
+        data.setParameters(parameters);
+        Assert.assertEquals("Stages reading the spans of the stages before differ from the chain.",
+                chained, service.execute(data.asJson()));
+    }
+
+    @Test
+    public void testDefaultSameAsChain() throws OpenNLPWebServiceException {
+        String chained = new Data<>(Uri.LIF, wrapContainer(testSent)).asJson();
+        chained = new Splitter().execute(chained);
+        chained = new Tokenizer().execute(chained);
+        chained = new POSTagger().execute(chained);
+        chained = new NamedEntityRecognizer().execute(chained);
+        chained = new Parser().execute(chained);
+
+        String fused = service.execute(new Data<>(Uri.LIF, wrapContainer(testSent)).asJson());
+        Assert.assertEquals(chained, fused);
+
+        Container container = new Container((Map) Serializer.parse(fused, Data.class).getPayload());
+        Assert.assertEquals(5, container.getViews().size());
+    }
+
+    @Test
+    public void testRequiredTypes() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("stages", "Splitter,Tokenizer,POSTagger,Chunker");
+        Assert.assertEquals("Views the stages produce should not be read", 0,
+                service.getRequiredTypes(parameters).size());
+
+        parameters.put("stages", "POSTagger,Chunker");
+        Assert.assertEquals(Arrays.asList(Uri.TOKEN, Uri.SENTENCE),
+                new ArrayList<>(service.getRequiredTypes(parameters)));
+    }
+
+    @Test
+    public void testUnknownStage() {
+        Data data = Serializer.parse(service.execute(input("Tokenizer,Lemmatizer")), Data.class);
+        Assert.assertEquals(Uri.ERROR, data.getDiscriminator());
+    }
+
+    @Test
+    public void testMetadata() {
+        String json = service.getMetadata();
+        Data data = Serializer.parse(json, Data.class);
+        Assert.assertEquals(Uri.META, data.getDiscriminator());
+        ServiceMetadata metadata = new ServiceMetadata((Map) data.getPayload());
+        Assert.assertEquals(Pipeline.class.getName(), metadata.getName());
+        IOSpecification produces = metadata.getProduces();
+        List<String> annotations = produces.getAnnotations();
+        Assert.assertTrue(annotations.contains(Uri.TOKEN));
+        Assert.assertTrue(annotations.contains(Uri.POS));
+        Assert.assertTrue(annotations.contains(Uri.CONSTITUENT));
+    }
+}
@@ -47,4 +47,19 @@ public class TestService {
         return container;
     }
 
+    /**
+     * The provenance string every execute() writes in the "contains" metadata
+     * is built once, see ProducerBenchmark in src/jmh for its cost.
+     */
+    @Test
+    public void testProducerCached() {
+        if (service == null) {
+            return;
+        }
+        String producer = String.format("%s:%s", service.getClass().getName(), OpenNLPAbstractWebService.readVersion());
+        Assert.assertEquals(producer, service.getProducer());
+        Assert.assertSame(service.getVersion(), service.getVersion());
+        Assert.assertSame(service.getProducer(), service.getProducer());
+    }
+
 }
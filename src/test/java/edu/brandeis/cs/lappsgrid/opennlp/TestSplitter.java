@@ -76,6 +76,16 @@ public class TestSplitter extends TestService {
         System.out.println("\\-----------------------------------/\n");
     }
     
+    @Test
+    public void testExecuteStreamed() {
+        Data data = new Data<>(Uri.LIF, wrapContainer(testSent));
+        data.setParameter("stream-window", "0");
+        String expected = service.execute(Serializer.toJson(data));
+        // windows holding at least a sentence and a half split as the whole text
+        data.setParameter("stream-window", "150");
+        Assert.assertEquals("Streamed sentences differ.", expected, service.execute(Serializer.toJson(data)));
+    }
+
     @Test
     public void testMetadata() {
     	String json = service.getMetadata();
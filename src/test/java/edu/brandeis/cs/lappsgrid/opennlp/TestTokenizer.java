@@ -10,8 +10,13 @@ import org.lappsgrid.metadata.IOSpecification;
 import org.lappsgrid.metadata.ServiceMetadata;
 import org.lappsgrid.serialization.Data;
 import org.lappsgrid.serialization.Serializer;
+import org.lappsgrid.serialization.lif.Container;
 
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -92,6 +97,142 @@ public class TestTokenizer extends TestService {
         System.out.println("\\-----------------------------------/\n");
     }
     
+    @Test
+    public void testExecuteStreamsLif() throws OpenNLPWebServiceException {
+        String input = new Splitter().execute(testSent);
+        Data data = Serializer.parse(input, Data.class);
+        data.setParameter("unused", "value");
+        input = Serializer.toJson(data);
+
+        Container container = new Container((Map) data.getPayload());
+        container.setContext(Container.REMOTE_CONTEXT);
+        String expected = service.execute(container);
+        Assert.assertEquals("Streamed LIF differs from the serialized container.",
+                expected, service.execute(input));
+    }
+
+    @Test
+    public void testExecuteStreamed() {
+        Data data = new Data<>(Discriminators.Uri.LIF, wrapContainer(testSent));
+        data.setParameter("stream-window", "0");
+        String expected = service.execute(Serializer.toJson(data));
+        long tokens = service.getMetrics().getTokens();
+        data.setParameter("stream-window", "16");
+        Assert.assertEquals("Streamed tokens differ.", expected, service.execute(Serializer.toJson(data)));
+        Assert.assertEquals(tokens + 42, service.getMetrics().getTokens());
+
+        expected = service.execute(testSent);
+        System.setProperty("Tokenizer.stream-window", "16");
+        try {
+            Assert.assertEquals("Streamed text input differs.", expected, service.execute(testSent));
+        } finally {
+            System.clearProperty("Tokenizer.stream-window");
+        }
+    }
+
+    @Test
+    public void testExecuteProfile() {
+        Data data = new Data<>(Discriminators.Uri.LIF, wrapContainer(testSent));
+        data.setParameter("profile", "offsets");
+        String json = service.execute(Serializer.toJson(data));
+        Container container = new Container((Map) Serializer.parse(json, Data.class).getPayload());
+        Assert.assertEquals(42, container.getView(0).getAnnotations().size());
+        Assert.assertFalse("Offsets profile should drop the words", json.contains("\"word\""));
+
+        data.setParameter("stream-window", "16");
+        Assert.assertEquals("Streamed tokens differ.", json, service.execute(Serializer.toJson(data)));
+
+        data.setParameter("profile", "unknown");
+        Data error = Serializer.parse(service.execute(Serializer.toJson(data)), Data.class);
+        Assert.assertEquals("Unknown profile should fail", Uri.ERROR, error.getDiscriminator());
+    }
+
+    @Test
+    public void testExecuteBatch() {
+        String[] inputs = {
+                "Hi. How are you?",
+                new Data<>("http://example.org/unsupported", "text").asJson(),
+                new Data<>(Discriminators.Uri.LIF, wrapContainer(testSent)).asJson()};
+        String[] results = service.executeBatch(inputs);
+        Assert.assertEquals("One result per document", inputs.length, results.length);
+        for (int i = 0; i < inputs.length; i++) {
+            Assert.assertEquals("Results out of order", service.execute(inputs[i]), results[i]);
+        }
+        Assert.assertEquals("Unsupported document should fail alone", Uri.ERROR,
+                Serializer.parse(results[1], Data.class).getDiscriminator());
+    }
+
+    @Test
+    public void testExecuteCached() {
+        String input = new Data<>(Discriminators.Uri.LIF, wrapContainer(testSent)).asJson();
+        String expected = service.execute(input);
+        ResultCache cache = ResultCache.getInstance();
+        System.setProperty("cache.enabled", "true");
+        try {
+            cache.clear();
+            long hits = cache.getHits();
+            long misses = cache.getMisses();
+            Assert.assertEquals(expected, service.execute(input));
+            Assert.assertEquals(misses + 1, cache.getMisses());
+            Assert.assertEquals(1, cache.getEntries());
+            Assert.assertEquals("Same document should be a hit", expected, service.execute(input));
+            Assert.assertEquals(hits + 1, cache.getHits());
+            service.execute(new Data<>(Discriminators.Uri.LIF, wrapContainer(testSent + " Bye.")).asJson());
+            Assert.assertEquals("Other text should be a miss", misses + 2, cache.getMisses());
+        } finally {
+            System.clearProperty("cache.enabled");
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        ServiceMetrics metrics = service.getMetrics();
+        long requests = metrics.getRequests();
+        long errors = metrics.getErrors();
+        long tokens = metrics.getTokens();
+        service.execute(new Data<>(Discriminators.Uri.LIF, wrapContainer("Hi. How are you?")).asJson());
+        service.execute(new Data<>("http://example.org/unsupported", "text").asJson());
+        Assert.assertEquals(requests + 1, metrics.getRequests());
+        Assert.assertEquals(errors + 1, metrics.getErrors());
+        Assert.assertEquals(tokens + 6, metrics.getTokens());
+        Assert.assertTrue(metrics.getAnnotateTimeMillis() > 0);
+
+        Object jmx = ManagementFactory.getPlatformMBeanServer().getAttribute(
+                new ObjectName(ServiceMetrics.DOMAIN + ":type=ServiceMetrics,name=Tokenizer"), "Requests");
+        Assert.assertEquals(metrics.getRequests(), jmx);
+
+        StringWriter out = new StringWriter();
+        MetricsServlet.write(new PrintWriter(out));
+        Assert.assertTrue(out.toString().contains("Tokenizer.requests " + metrics.getRequests()));
+    }
+
+    @Test
+    public void testAdmission() throws OpenNLPWebServiceException {
+        System.setProperty("Tokenizer.max-concurrent", "1");
+        System.setProperty("Tokenizer.max-queued", "0");
+        Tokenizer tokenizer;
+        try {
+            tokenizer = new Tokenizer();
+        } finally {
+            System.clearProperty("Tokenizer.max-concurrent");
+            System.clearProperty("Tokenizer.max-queued");
+        }
+        String input = new Data<>(Discriminators.Uri.LIF, wrapContainer(testSent)).asJson();
+        Admission admission = tokenizer.getAdmission();
+        Assert.assertTrue(admission.acquire());
+        long rejected = tokenizer.getMetrics().getRejected();
+        try {
+            Data data = Serializer.parse(tokenizer.execute(input), Data.class);
+            Assert.assertEquals("Full service should reject", Uri.ERROR, data.getDiscriminator());
+            Assert.assertEquals(rejected + 1, tokenizer.getMetrics().getRejected());
+        } finally {
+            admission.release();
+        }
+        Assert.assertEquals(service.execute(input), tokenizer.execute(input));
+        Assert.assertEquals(0, admission.getRunning());
+    }
+
     @Test
     public void testMetadata() {
     	String json = service.getMetadata();